@@ -0,0 +1,83 @@
+package org.example.huffman_coding.benchmarks;
+
+import org.example.huffman_coding.Compression;
+import org.example.huffman_coding.Decompression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded compression and decompression throughput over in-memory streams. The score is in operations per
+ * second, one operation being the whole corpus, so MB/s = score * inputSize / 2^20; -prof gc, which the jmh profile
+ * always passes, reports the allocation rate.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CodecBenchmark {
+    @Param({"UNIFORM", "SKEWED", "TEXT", "SINGLE_SYMBOL"})
+    public Corpus corpus;
+
+    @Param({"4096", "22680", "131072"})
+    public int chunkSize;
+
+    @Param({"1", "2"})
+    public int symbolWidth;
+
+    @Param({"false", "true"})
+    public boolean interleaved;
+
+    @Param({"4194304"})
+    public int inputSize;
+
+    private byte[] input;
+    private byte[] compressed;
+    private Compression compression;
+    private Decompression decompression;
+    // Reused between operations, so that only the codec allocations are measured
+    private ByteArrayOutputStream output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = corpus.generate(inputSize);
+        compression = new Compression();
+        compression.setChunkSize(chunkSize);
+        compression.setSymbolWidth(symbolWidth);
+        compression.setInterleaved(interleaved);
+        decompression = new Decompression();
+        output = new ByteArrayOutputStream(inputSize + inputSize / 8 + 1024);
+        compression.compress(new ByteArrayInputStream(input), output);
+        compressed = output.toByteArray();
+    }
+
+    @Benchmark
+    public int compress() throws IOException {
+        output.reset();
+        compression.compress(new ByteArrayInputStream(input), output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int decompress() throws IOException {
+        output.reset();
+        decompression.decompress(new ByteArrayInputStream(compressed), output);
+        return output.size();
+    }
+}
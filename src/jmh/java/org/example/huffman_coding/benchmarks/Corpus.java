@@ -0,0 +1,70 @@
+package org.example.huffman_coding.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The synthetic inputs of the benchmarks. Every corpus is generated from a fixed seed, so the numbers of two runs are
+ * comparable.
+ * */
+public enum Corpus {
+    // Every byte value equally likely: nothing to gain, the worst case for the coder
+    UNIFORM {
+        @Override
+        byte[] generate(int size, SplittableRandom random) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) data[i] = (byte) random.nextInt(256);
+            return data;
+        }
+    },
+    // Geometrically distributed byte values (about 3 bits per byte of entropy)
+    SKEWED {
+        @Override
+        byte[] generate(int size, SplittableRandom random) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++)
+                data[i] = (byte) Math.min(255, (int) (-Math.log(1 - random.nextDouble()) * 3));
+            return data;
+        }
+    },
+    // Structured log lines, the workload n-gram symbols are meant for
+    TEXT {
+        private final String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+        private final String[] paths = {"/api/users", "/api/orders", "/health", "/api/orders/items", "/login"};
+
+        @Override
+        byte[] generate(int size, SplittableRandom random) {
+            StringBuilder text = new StringBuilder(size + 128);
+            while (text.length() < size) {
+                text.append("2024-05-").append(10 + random.nextInt(20)).append(" 12:")
+                        .append(10 + random.nextInt(50)).append(':').append(10 + random.nextInt(50)).append(' ')
+                        .append(levels[random.nextInt(levels.length)]).append(" GET ")
+                        .append(paths[random.nextInt(paths.length)]).append(" status=")
+                        .append(random.nextInt(10) == 0 ? 500 : 200).append(" time=")
+                        .append(random.nextInt(1000)).append("ms\n");
+            }
+            return Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), size);
+        }
+    },
+    // A single repeated byte value: the best case, one bit per byte
+    SINGLE_SYMBOL {
+        @Override
+        byte[] generate(int size, SplittableRandom random) {
+            byte[] data = new byte[size];
+            Arrays.fill(data, (byte) 'a');
+            return data;
+        }
+    };
+
+    private static final long SEED = 20011629;
+
+    abstract byte[] generate(int size, SplittableRandom random);
+
+    /**
+     * This function takes a size in bytes and returns the corpus of that size.
+     * */
+    public byte[] generate(int size) {
+        return generate(size, new SplittableRandom(SEED));
+    }
+}
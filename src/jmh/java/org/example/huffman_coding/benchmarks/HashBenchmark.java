@@ -0,0 +1,112 @@
+package org.example.huffman_coding.benchmarks;
+
+import org.example.huffman_coding.Hashing.Hash;
+import org.example.huffman_coding.Hashing.NSpaceHash;
+import org.example.huffman_coding.Hashing.NSquareSpaceHash;
+import org.example.huffman_coding.Hashing.OpenAddressingHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of a single insert, search and delete in every Hash implementation. Inserts and deletes change the
+ * table, so they run in batches of BATCH keys on a table rebuilt before every batch, and the score is per key.
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashBenchmark {
+    private static final int BATCH = 100;
+
+    @State(Scope.Thread)
+    public static class Table {
+        @Param({"NSquareSpaceHash", "OpenAddressingHash", "NSpaceHash"})
+        public String implementation;
+
+        @Param({"100", "1000"})
+        public int size;
+
+        Hash hash;
+        // The keys in the table, and as many keys that are not
+        long[] keys;
+        long[] missingKeys;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void generateKeys() {
+            SplittableRandom random = new SplittableRandom(20011629);
+            // Positive keys of up to 40 bits, which all the implementations accept
+            keys = random.longs(size, 1, 1L << 40).toArray();
+            missingKeys = random.longs(size, 1L << 40, 1L << 41).toArray();
+            fill();
+        }
+
+        /**
+         * Builds a table holding the keys, with room for the missing keys too
+         * */
+        void fill() {
+            switch (implementation) {
+                case "NSquareSpaceHash" -> hash = new NSquareSpaceHash(2 * size);
+                case "OpenAddressingHash" -> hash = new OpenAddressingHash(2 * size);
+                case "NSpaceHash" -> hash = new NSpaceHash(keys);
+                default -> throw new IllegalArgumentException("Unknown implementation " + implementation + ".");
+            }
+            for (long key : keys) hash.insert(key);
+        }
+
+        long nextKey(long[] from) {
+            long key = from[next];
+            next = next + 1 == from.length ? 0 : next + 1;
+            return key;
+        }
+    }
+
+    /**
+     * A table rebuilt before every batch of inserts or deletes
+     * */
+    @State(Scope.Thread)
+    public static class FreshTable extends Table {
+        @Setup(Level.Invocation)
+        public void refill() {
+            fill();
+        }
+    }
+
+    @Benchmark
+    public boolean searchHit(Table table) {
+        return table.hash.search(table.nextKey(table.keys)).getKey();
+    }
+
+    @Benchmark
+    public boolean searchMiss(Table table) {
+        return table.hash.search(table.nextKey(table.missingKeys)).getKey();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insert(FreshTable table, Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) blackhole.consume(table.hash.insert(table.missingKeys[i % table.size]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void delete(FreshTable table, Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) blackhole.consume(table.hash.delete(table.keys[i % table.size]));
+    }
+}
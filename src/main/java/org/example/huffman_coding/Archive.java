@@ -0,0 +1,389 @@
+package org.example.huffman_coding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Many files in a single archive (.hca):
+ * <pre>
+ * header:     'H' 'A' version
+ * entries:    every file as a complete compressed stream (see HuffmanFormat)
+ * directory:  the entry count (4 bytes), then per entry its name length (2 bytes), name (UTF-8), original size,
+ *             offset and compressed size (8 bytes each)
+ * trailer:    the offset of the directory (8 bytes)
+ * </pre>
+ * Every file is compressed as an independent task and appended as soon as it is done, so the entries are in no
+ * particular order; the directory, written last, is sorted by name.
+ * */
+public class Archive {
+    public static final byte[] MAGIC = {'H', 'A'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 3;
+    private static final int TRAILER_SIZE = 8;
+
+    // Files larger than this are compressed into a spill file next to the archive instead of in memory
+    private static final int LARGE_ENTRY_SIZE = 8 << 20;
+
+    /**
+     * An entry of the archive directory
+     * */
+    public static final class Entry {
+        private final String name;
+        private final long size;
+        private final long offset;
+        private final long compressedSize;
+
+        Entry(String name, long size, long offset, long compressedSize) {
+            this.name = name;
+            this.size = size;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Return the size of the original file
+         * */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Return the offset of the compressed stream of the file in the archive
+         * */
+        public long offset() {
+            return offset;
+        }
+
+        public long compressedSize() {
+            return compressedSize;
+        }
+    }
+
+    // The compression shared by all the tasks (it keeps its encoding state per thread)
+    private final Compression compression;
+    // The number of files compressed or extracted concurrently
+    private final int parallelism;
+
+    public Archive() {
+        this(new Compression(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This function takes the compression used for every file (it should compress inline, with a parallelism of 1,
+     * since the files themselves are the unit of concurrency) and the number of files processed concurrently.
+     * */
+    public Archive(Compression compression, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("The parallelism must be at least 1.");
+        this.compression = compression;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * This function returns the executor of the file tasks: one virtual thread per task when the runtime has them
+     * (Java 21 and later), a pool of parallelism threads otherwise. Either way, at most parallelism tasks run at once
+     * (see runAll), which also bounds the memory held by the files in flight.
+     * */
+    private ExecutorService newTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * A task on one file
+     * */
+    private interface FileTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * This function takes a list of tasks, runs them with at most parallelism of them at once, and waits for all of
+     * them. The first failure stops the submission of the remaining tasks and is rethrown.
+     * */
+    private void runAll(List<FileTask> tasks) throws IOException {
+        ExecutorService executor = newTaskExecutor();
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (FileTask task : tasks) {
+                permits.acquire();
+                if (failed.get()) {
+                    permits.release();
+                    break;
+                }
+                futures.add(executor.submit(() -> {
+                    try {
+                        task.run();
+                        return null;
+                    } catch (Throwable e) {
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The archive operation was interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Failed to process a file.", e.getCause());
+        } finally {
+            for (Future<?> future : futures) future.cancel(true);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * This function takes an archive path and a directory, and archives every regular file under the directory (but
+     * the archive itself), named by its path relative to the directory (with '/' separators).
+     * */
+    public void create(Path archivePath, Path directory) throws IOException {
+        Path archive = archivePath.toAbsolutePath().normalize();
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(file -> !file.toAbsolutePath().normalize().equals(archive))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<String> names = new ArrayList<>();
+        for (Path file : files) names.add(directory.relativize(file).toString().replace('\\', '/'));
+        create(archivePath, files, names);
+    }
+
+    /**
+     * This function takes an archive path and a list of files, and archives the files, named by their file names.
+     * */
+    public void create(Path archivePath, List<Path> files) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (Path file : files) names.add(file.getFileName().toString());
+        create(archivePath, files, names);
+    }
+
+    /**
+     * This function takes an archive path, a list of files and the entry name of every file, compresses the files
+     * concurrently and writes the archive. Small files are compressed in memory and large ones into a spill file, and
+     * either is appended as soon as it is done, so the lock of the archive is only held to copy finished entries.
+     * */
+    private void create(Path archivePath, List<Path> files, List<String> names) throws IOException {
+        Set<String> uniqueNames = new HashSet<>();
+        for (String name : names) {
+            if (!uniqueNames.add(name)) throw new IOException("Duplicate entry name " + name + ".");
+            if (name.getBytes(StandardCharsets.UTF_8).length > 0xFFFF)
+                throw new IOException("Entry name too long: " + name + ".");
+        }
+
+        try (FileChannel archiveChannel = FileChannel.open(archivePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream archiveStream = new BufferedOutputStream(Channels.newOutputStream(archiveChannel));
+            archiveStream.write(MAGIC);
+            archiveStream.write(VERSION);
+            archiveStream.flush();
+
+            // The tasks append their entries under the lock of the directory.
+            List<Entry> entries = new ArrayList<>();
+            List<FileTask> tasks = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                String name = names.get(i);
+                tasks.add(() -> {
+                    long size = Files.size(file);
+                    if (size > LARGE_ENTRY_SIZE) {
+                        appendLargeEntry(archivePath, archiveChannel, archiveStream, entries, file, name, size);
+                        return;
+                    }
+
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) size / 2 + 64);
+                    compression.compress(new ByteArrayInputStream(Files.readAllBytes(file)), compressed);
+                    synchronized (entries) {
+                        long offset = archiveChannel.position();
+                        compressed.writeTo(archiveStream);
+                        archiveStream.flush();
+                        entries.add(new Entry(name, size, offset, compressed.size()));
+                    }
+                });
+            }
+            runAll(tasks);
+
+            // Write the directory and the trailer.
+            entries.sort(Comparator.comparing(Entry::name));
+            long directoryOffset = archiveChannel.position();
+            HuffmanFormat.writeInt(archiveStream, entries.size());
+            for (Entry entry : entries) {
+                byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+                archiveStream.write(name.length >>> 8);
+                archiveStream.write(name.length);
+                archiveStream.write(name);
+                HuffmanFormat.writeLong(archiveStream, entry.size());
+                HuffmanFormat.writeLong(archiveStream, entry.offset());
+                HuffmanFormat.writeLong(archiveStream, entry.compressedSize());
+            }
+            HuffmanFormat.writeLong(archiveStream, directoryOffset);
+            archiveStream.flush();
+        }
+    }
+
+    /**
+     * This function takes the archive path, its channel and buffered stream, the entries appended so far, and a large
+     * file with its entry name and size. It compresses the file into a spill file next to the archive without any
+     * lock, then appends the spill file to the archive under the lock of the entries.
+     * */
+    private void appendLargeEntry(Path archivePath, FileChannel archiveChannel, OutputStream archiveStream,
+                                  List<Entry> entries, Path file, String name, long size) throws IOException {
+        Path spillPath = Files.createTempFile(archivePath.toAbsolutePath().getParent(), ".hca-", ".tmp");
+        try (FileChannel spillChannel = FileChannel.open(spillPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            OutputStream spillStream = new BufferedOutputStream(Channels.newOutputStream(spillChannel));
+            try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                compression.compress(fileChannel, spillStream);
+            }
+            spillStream.flush();
+
+            long compressedSize = spillChannel.size();
+            synchronized (entries) {
+                archiveStream.flush();
+                long offset = archiveChannel.position();
+                for (long copied = 0; copied < compressedSize; )
+                    copied += spillChannel.transferTo(copied, compressedSize - copied, archiveChannel);
+                entries.add(new Entry(name, size, offset, compressedSize));
+            }
+        } finally {
+            Files.deleteIfExists(spillPath);
+        }
+    }
+
+    /**
+     * This function takes an archive path and returns its directory.
+     * */
+    public List<Entry> list(Path archivePath) throws IOException {
+        try (FileChannel archiveChannel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+            return readDirectory(archiveChannel);
+        }
+    }
+
+    private static List<Entry> readDirectory(FileChannel archiveChannel) throws IOException {
+        long archiveSize = archiveChannel.size();
+        byte[] header = readFully(archiveChannel, 0, (int) Math.min(HEADER_SIZE, archiveSize));
+        if (header.length < HEADER_SIZE || header[0] != MAGIC[0] || header[1] != MAGIC[1])
+            throw new IOException("Not a Huffman archive.");
+        if (header[2] != VERSION) throw new IOException("Unsupported archive version " + header[2] + ".");
+        if (archiveSize < HEADER_SIZE + 4 + TRAILER_SIZE) throw new IOException("Missing archive directory.");
+
+        long directoryOffset = HuffmanFormat.readLong(readFully(archiveChannel, archiveSize - TRAILER_SIZE,
+                TRAILER_SIZE), 0);
+        long directorySize = archiveSize - TRAILER_SIZE - directoryOffset;
+        if (directoryOffset < HEADER_SIZE || directorySize < 4 || directorySize > Integer.MAX_VALUE)
+            throw new IOException("Corrupted archive directory.");
+        byte[] directory = readFully(archiveChannel, directoryOffset, (int) directorySize);
+
+        int count = HuffmanFormat.readInt(directory, 0);
+        if (count < 0 || count > (directory.length - 4) / 26) throw new IOException("Corrupted archive directory.");
+        List<Entry> entries = new ArrayList<>(count);
+        int idx = 4;
+        for (int i = 0; i < count; i++) {
+            if (idx + 2 > directory.length) throw new IOException("Corrupted archive directory.");
+            int nameLength = (directory[idx] & 0xFF) << 8 | (directory[idx + 1] & 0xFF);
+            idx += 2;
+            if (idx + nameLength + 24 > directory.length) throw new IOException("Corrupted archive directory.");
+            String name = new String(directory, idx, nameLength, StandardCharsets.UTF_8);
+            idx += nameLength;
+            long size = HuffmanFormat.readLong(directory, idx);
+            long offset = HuffmanFormat.readLong(directory, idx + 8);
+            long compressedSize = HuffmanFormat.readLong(directory, idx + 16);
+            idx += 24;
+            if (size < 0 || offset < HEADER_SIZE || compressedSize < 0 || offset + compressedSize > directoryOffset)
+                throw new IOException("Corrupted archive directory.");
+            entries.add(new Entry(name, size, offset, compressedSize));
+        }
+        return entries;
+    }
+
+    /**
+     * This function takes an archive path and an output directory, and extracts every entry there concurrently,
+     * creating the parent directories. An entry whose name would land outside the output directory is rejected.
+     * */
+    public void extract(Path archivePath, Path outputDirectory) throws IOException {
+        Path root = outputDirectory.toAbsolutePath().normalize();
+        List<FileTask> tasks = new ArrayList<>();
+        for (Entry entry : list(archivePath)) {
+            Path target = root.resolve(entry.name()).normalize();
+            if (!target.startsWith(root) || target.equals(root))
+                throw new IOException("Invalid entry name " + entry.name() + ".");
+            tasks.add(() -> {
+                Files.createDirectories(target.getParent());
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(target))) {
+                    extract(archivePath, entry, outputStream);
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * This function takes an archive path, an entry name and an output stream, and writes the decompressed entry to
+     * the stream (which is not closed).
+     * */
+    public void extract(Path archivePath, String name, OutputStream outputStream) throws IOException {
+        for (Entry entry : list(archivePath)) {
+            if (entry.name().equals(name)) {
+                extract(archivePath, entry, outputStream);
+                return;
+            }
+        }
+        throw new IOException("No entry named " + name + ".");
+    }
+
+    private void extract(Path archivePath, Entry entry, OutputStream outputStream) throws IOException {
+        try (FileChannel archiveChannel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+            archiveChannel.position(entry.offset());
+            // The compressed stream of the entry ends with its own end block, so it is read no further.
+            InputStream inputStream = new BufferedInputStream(Channels.newInputStream(archiveChannel));
+            new Decompression().decompress(inputStream, outputStream);
+        }
+    }
+
+    private static byte[] readFully(FileChannel fileChannel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (fileChannel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of the archive.");
+        return buffer.array();
+    }
+}
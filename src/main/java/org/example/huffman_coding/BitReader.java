@@ -0,0 +1,84 @@
+package org.example.huffman_coding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public class BitReader {
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // The packed input bytes
+    private final byte[] data;
+    // The index of the next byte to be loaded into the bit buffer
+    private int position;
+    // The index after the last byte of the packed data
+    private final int limit;
+    // Buffered bits, left aligned (the top bitCount bits are the next bits of the stream)
+    private long buffer;
+    // The number of valid bits in the buffer
+    private int bitCount;
+
+    public BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Tops the bit buffer up to at least 57 bits. Bits past the end of the packed data read as 0s.
+     * */
+    private void refill() {
+        if (position + 8 <= limit) {
+            // Load 8 bytes at once; the bytes that do not fit are loaded again by the next refill, so the extra low
+            // bits OR-ed in here always match what will be there anyway.
+            long word = (long) LONG_VIEW.get(data, position);
+            buffer |= word >>> bitCount;
+            int bytes = (63 - bitCount) >>> 3;
+            position += bytes;
+            bitCount += bytes << 3;
+        } else {
+            while (bitCount <= 56) {
+                if (position < limit)
+                    buffer |= (long) (data[position++] & 0xFF) << (56 - bitCount);
+                bitCount += 8;
+            }
+        }
+    }
+
+    /**
+     * This function takes a number of bits (1 to 32) and returns them without consuming them.
+     * */
+    public int peekBits(int length) {
+        if (bitCount < length) refill();
+        return (int) (buffer >>> (64 - length));
+    }
+
+    /**
+     * This function takes a number of bits (up to the number last peeked) and consumes them.
+     * */
+    public void skipBits(int length) {
+        buffer <<= length;
+        bitCount -= length;
+    }
+
+    /**
+     * This function takes a number of bits (1 to 32), consumes them and returns them as an integer.
+     * */
+    public int readBits(int length) {
+        int value = peekBits(length);
+        skipBits(length);
+        return value;
+    }
+
+    /**
+     * Consumes and returns the next bit
+     * */
+    public int readBit() {
+        if (bitCount == 0) refill();
+        int bit = (int) (buffer >>> 63);
+        buffer <<= 1;
+        bitCount--;
+        return bit;
+    }
+}
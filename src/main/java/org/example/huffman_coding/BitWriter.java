@@ -0,0 +1,93 @@
+package org.example.huffman_coding;
+
+import java.util.Arrays;
+
+public class BitWriter {
+    // The packed output bytes
+    private byte[] buffer;
+    // The number of bytes already spilled into the buffer
+    private int position;
+    // Pending bits, right aligned (only the low bitCount bits are meaningful)
+    private long accumulator;
+    // The number of pending bits in the accumulator (always < 32 between calls)
+    private int bitCount;
+    // The total number of bits written since the last reset
+    private long bitLength;
+
+    public BitWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 8)];
+    }
+
+    /**
+     * This function takes a codeword and its length (0 to 32 bits) and appends it to the stream, most significant bit
+     * first. The codeword must not have any bits set above its length.
+     * */
+    public void writeBits(int code, int length) {
+        accumulator = (accumulator << length) | (code & 0xFFFFFFFFL);
+        bitCount += length;
+        bitLength += length;
+
+        // Spill a whole 32-bit word at a time once enough bits are pending.
+        if (bitCount >= 32) {
+            ensureCapacity(4);
+            bitCount -= 32;
+            int word = (int) (accumulator >>> bitCount);
+            buffer[position] = (byte) (word >>> 24);
+            buffer[position + 1] = (byte) (word >>> 16);
+            buffer[position + 2] = (byte) (word >>> 8);
+            buffer[position + 3] = (byte) word;
+            position += 4;
+        }
+    }
+
+    /**
+     * This function pads the pending bits with 0s up to a byte boundary, spills them, and returns the number of bytes
+     * the packed data takes.
+     * */
+    public int flush() {
+        ensureCapacity(4);
+        while (bitCount > 0) {
+            int shift = bitCount - 8;
+            buffer[position++] = (byte) (shift >= 0 ? accumulator >>> shift : accumulator << -shift);
+            bitCount = Math.max(shift, 0);
+        }
+        accumulator = 0;
+        return position;
+    }
+
+    /**
+     * Return the total number of bits written since the last reset
+     * */
+    public long bitLength() {
+        return bitLength;
+    }
+
+    /**
+     * Return the number of bytes spilled so far (call flush first to include the pending bits)
+     * */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Return the backing buffer, valid up to size()
+     * */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Clears the writer so that its buffer can be reused for the next chunk
+     * */
+    public void reset() {
+        position = 0;
+        accumulator = 0;
+        bitCount = 0;
+        bitLength = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.huffman_coding;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed number of reusable buffers handed between the stages of a pipeline. Taking a buffer blocks while all of
+ * them are in use, which holds the stage that takes them back until a later stage releases one.
+ * */
+final class BufferPool {
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * This function takes the number of buffers. They are allocated on first use, and grown to the largest size taken.
+     * */
+    BufferPool(int count) {
+        buffers = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) buffers.add(new byte[0]);
+    }
+
+    /**
+     * This function takes a size, waits for a free buffer, and returns it, grown to at least the size.
+     * */
+    byte[] take(int size) throws InterruptedIOException {
+        byte[] buffer;
+        try {
+            buffer = buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer.");
+        }
+        return buffer.length < size ? new byte[size] : buffer;
+    }
+
+    /**
+     * This function takes a buffer returned by take and gives it back to the pool.
+     * */
+    void release(byte[] buffer) {
+        buffers.add(buffer);
+    }
+}
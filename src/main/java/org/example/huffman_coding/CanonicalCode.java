@@ -0,0 +1,166 @@
+package org.example.huffman_coding;
+
+import java.util.Arrays;
+
+public class CanonicalCode {
+    private CanonicalCode() {}
+
+    /**
+     * This function takes the codeword lengths of a prefix code (0 for an unused symbol) and fills the canonical
+     * codewords: shorter codes come first, and codes of the same length are consecutive in symbol order. Both sides
+     * only need the lengths to rebuild the same code.
+     * */
+    public static void assignCodes(int[] lengths, int[] codes) {
+        int maxLength = 0;
+        for (int length : lengths) maxLength = Math.max(maxLength, length);
+        assignCodes(lengths, lengths.length, codes, new int[maxLength + 1]);
+    }
+
+    /**
+     * Same as assignCodes(lengths, codes) for the first count symbols, with a scratch array longer than the longest
+     * length, so that nothing is allocated.
+     * */
+    public static void assignCodes(int[] lengths, int count, int[] codes, int[] nextCode) {
+        Arrays.fill(nextCode, 0);
+        for (int symbol = 0; symbol < count; symbol++)
+            if (lengths[symbol] > 0) nextCode[lengths[symbol]]++;
+
+        // Turn the number of codewords of each length into the first codeword of that length.
+        int code = 0;
+        int previousCount = 0;
+        for (int length = 1; length < nextCode.length; length++) {
+            int lengthCount = nextCode[length];
+            code = (code + previousCount) << 1;
+            nextCode[length] = code;
+            previousCount = lengthCount;
+        }
+
+        for (int symbol = 0; symbol < count; symbol++)
+            codes[symbol] = lengths[symbol] > 0 ? nextCode[lengths[symbol]]++ : 0;
+    }
+
+    /**
+     * This function takes the weights of n symbols sorted in ascending order and replaces them in place by their
+     * Huffman codeword lengths (so the lengths come out in descending order). It is the algorithm of Moffat and
+     * Katajainen: the two-queue construction where the leaves and the inner nodes both live in the same array, which
+     * needs no allocation and runs in O(n).
+     * */
+    public static void huffmanLengths(int[] tree, int n) {
+        if (n == 0) return;
+        if (n == 1) {
+            tree[0] = 1;
+            return;
+        }
+
+        // First pass, left to right: merge the two lightest of the leaves (from leaf on) and the inner nodes (from
+        // root on), leaving parent pointers behind.
+        tree[0] += tree[1];
+        int root = 0;
+        int leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || tree[root] < tree[leaf]) {
+                tree[next] = tree[root];
+                tree[root++] = next;
+            } else {
+                tree[next] = tree[leaf++];
+            }
+
+            if (leaf >= n || (root < next && tree[root] < tree[leaf])) {
+                tree[next] += tree[root];
+                tree[root++] = next;
+            } else {
+                tree[next] += tree[leaf++];
+            }
+        }
+
+        // Second pass, right to left: turn the parent pointers into inner node depths.
+        tree[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) tree[next] = tree[tree[next]] + 1;
+
+        // Third pass, right to left: turn the inner node depths into leaf depths.
+        int available = 1;
+        int used = 0;
+        int depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            while (root >= 0 && tree[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                tree[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+    }
+
+    /**
+     * This function takes the frequency of each symbol and a maximum codeword length, and fills the optimal codeword
+     * lengths that do not exceed it using the package-merge algorithm. Symbols with frequency 0 get length 0.
+     * */
+    public static void limitLengths(int[] frequencies, int[] lengths, int maxLength) {
+        limitLengths(frequencies, frequencies.length, lengths, maxLength);
+    }
+
+    /**
+     * Same as limitLengths(frequencies, lengths, maxLength) for the first count symbols.
+     * */
+    public static void limitLengths(int[] frequencies, int count, int[] lengths, int maxLength) {
+        Arrays.fill(lengths, 0, count, 0);
+
+        // Sort the used symbols by frequency (the frequency is kept in the high bits, the symbol in the low bits).
+        int n = 0;
+        long[] leaves = new long[count];
+        for (int symbol = 0; symbol < count; symbol++)
+            if (frequencies[symbol] > 0) leaves[n++] = ((long) frequencies[symbol] << 32) | symbol;
+        if (n == 0) return;
+        if (n == 1) {
+            lengths[(int) leaves[0]] = 1;
+            return;
+        }
+        if (n > (1L << maxLength))
+            throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits.");
+        Arrays.sort(leaves, 0, n);
+
+        // Build the lists from the deepest level up. Each list merges the leaves with the packages (pairs) of the
+        // previous list; isLeaf remembers which items of each list are leaves.
+        boolean[][] isLeaf = new boolean[maxLength][];
+        long[] previous = new long[2 * n];
+        long[] current = new long[2 * n];
+        int previousSize = 0;
+        for (int level = 0; level < maxLength; level++) {
+            int packages = previousSize / 2;
+            isLeaf[level] = new boolean[n + packages];
+            int leafIdx = 0, packageIdx = 0, size = 0;
+            while (leafIdx < n || packageIdx < packages) {
+                long packageWeight = packageIdx < packages
+                        ? previous[2 * packageIdx] + previous[2 * packageIdx + 1] : Long.MAX_VALUE;
+                if (leafIdx < n && (leaves[leafIdx] >>> 32) <= packageWeight) {
+                    isLeaf[level][size] = true;
+                    current[size++] = leaves[leafIdx++] >>> 32;
+                } else {
+                    current[size++] = packageWeight;
+                    packageIdx++;
+                }
+            }
+            long[] swap = previous;
+            previous = current;
+            current = swap;
+            previousSize = size;
+        }
+
+        // Select the 2n - 2 cheapest items of the last list and unfold the selected packages level by level; every
+        // time a leaf is selected its codeword gets one bit longer.
+        int selected = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0 && selected > 0; level--) {
+            int leavesSelected = 0;
+            for (int i = 0; i < selected; i++)
+                if (isLeaf[level][i]) lengths[(int) leaves[leavesSelected++]]++;
+            selected = 2 * (selected - leavesSelected);
+        }
+    }
+}
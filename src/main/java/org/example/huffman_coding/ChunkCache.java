@@ -0,0 +1,115 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recently used chunks of a stream by chunk number, for deduplication. The compressor finds repeated chunks
+ * through their fingerprints, and the decompressor resolves the references to them; both caches see the same chunks
+ * in the same order (every chunk that is not a reference is added, every reference touches the chunk it refers to),
+ * and an LRU cache holds everything a smaller one under the same accesses holds, so a decompressor cache at least as
+ * large as the compressor one always has the chunk a reference points to.
+ * */
+final class ChunkCache {
+    /**
+     * A cached chunk: its number, a copy of its bytes and its fingerprint
+     * */
+    private static final class Entry {
+        final int chunk;
+        final byte[] data;
+        final long fingerprint;
+
+        Entry(int chunk, byte[] data, long fingerprint) {
+            this.chunk = chunk;
+            this.data = data;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    // The cached chunks by number, in access order
+    private final LinkedHashMap<Integer, Entry> chunks;
+    // The cached chunks by fingerprint (only filled by the compressor)
+    private final Map<Long, Entry> fingerprints = new HashMap<>();
+
+    /**
+     * This function takes the number of chunks to cache, from 1 to MAX_DEDUP_CHUNKS.
+     * */
+    ChunkCache(int capacity) {
+        chunks = new LinkedHashMap<>(2 * capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() <= capacity) return false;
+                fingerprints.remove(eldest.getValue().fingerprint, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * This function takes a chunk and its fingerprint, and returns the number of the cached chunk with the same bytes
+     * (marking it as used), or -1 if there is none.
+     * */
+    int find(ByteBuffer chunk, long fingerprint) {
+        Entry entry = fingerprints.get(fingerprint);
+        if (entry == null || !ByteBuffer.wrap(entry.data).equals(chunk)) return -1;
+        chunks.get(entry.chunk);
+        return entry.chunk;
+    }
+
+    /**
+     * This function takes the number of a chunk, the chunk and its fingerprint, and caches a copy of it.
+     * */
+    void add(int chunk, ByteBuffer data, long fingerprint) {
+        byte[] copy = new byte[data.remaining()];
+        data.get(data.position(), copy);
+        Entry entry = new Entry(chunk, copy, fingerprint);
+        chunks.put(chunk, entry);
+        fingerprints.put(fingerprint, entry);
+    }
+
+    /**
+     * This function takes the number of a chunk and the decoded chunk (a list of bytes and a length), and caches a
+     * copy of it.
+     * */
+    void add(int chunk, byte[] data, int length) {
+        chunks.put(chunk, new Entry(chunk, Arrays.copyOf(data, length), 0));
+    }
+
+    /**
+     * This function takes the number of a chunk and returns its cached bytes, marking it as used.
+     * */
+    byte[] get(int chunk) throws IOException {
+        Entry entry = chunks.get(chunk);
+        if (entry == null) throw new IOException("Reference to chunk " + chunk + ", which is not cached.");
+        return entry.data;
+    }
+
+    /**
+     * This function takes a chunk (the remaining bytes of the buffer) and returns its 64-bit fingerprint, a hash
+     * reading 8 bytes per step.
+     * */
+    static long fingerprint(ByteBuffer chunk) {
+        int position = chunk.position();
+        int end = chunk.limit();
+        long hash = 0x9E3779B97F4A7C15L ^ (end - position);
+        for (; position + 8 <= end; position += 8)
+            hash = Long.rotateLeft(hash ^ mix(chunk.getLong(position)), 27) * 0x9E3779B97F4A7C15L + 0x52DCE729;
+        for (; position < end; position++)
+            hash = Long.rotateLeft(hash ^ (chunk.get(position) & 0xFFL) * 0x27D4EB2F165667C5L, 11)
+                    * 0x9E3779B97F4A7C15L;
+        // Avalanche the last steps into every bit.
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    private static long mix(long word) {
+        return Long.rotateLeft(word * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B185EBCA87L;
+    }
+}
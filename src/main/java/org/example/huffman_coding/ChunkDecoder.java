@@ -0,0 +1,269 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The dictionary of the chunk being decoded, the decoder built from it, and the decoded bytes
+ * */
+class ChunkDecoder {
+    final int[] lengths = new int[256];
+    final HuffmanDecoder decoder = new HuffmanDecoder();
+    byte[] output = new byte[0];
+    // The symbols and codeword lengths of an n-gram chunk, grown to the largest code seen
+    private long[] ngramSymbols = new long[0];
+    private int[] ngramLengths = new int[0];
+    // The decoder of every context class of a context chunk, allocated on the first context chunk
+    private HuffmanDecoder[] contextDecoders;
+    // The boundaries of the sub-streams of an interleaved chunk
+    private final int[] streamOffsets = new int[HuffmanFormat.STREAMS + 1];
+    // A reusable buffer for the compressed chunk block
+    private byte[] block = new byte[0];
+    // The listener of the metrics, or null
+    CodecListener listener;
+    // The static dictionaries of the STATIC_CHUNK blocks
+    DictionaryRegistry dictionaries = DictionaryRegistry.shared();
+
+    /**
+     * This function takes a block size and returns a reusable buffer that can hold the block.
+     * */
+    byte[] blockBuffer(int blockSize) {
+        if (block.length < blockSize) block = new byte[blockSize];
+        return block;
+    }
+
+    /**
+     * This function takes a chunk, copies it into the output buffer as if it was decoded, and returns its length.
+     * */
+    int copyChunk(byte[] chunk) {
+        if (output.length < chunk.length) output = new byte[chunk.length];
+        System.arraycopy(chunk, 0, output, 0, chunk.length);
+        return chunk.length;
+    }
+
+    /**
+     * This function takes the compressed data, the index of a REF_CHUNK block and the number of the chunk, and
+     * returns the number of the earlier chunk it refers to.
+     * */
+    static int referencedChunk(byte[] data, int blockIdx, int chunkNumber) throws IOException {
+        if (data.length - blockIdx < HuffmanFormat.BLOCK_HEADER_SIZE + 8
+                || HuffmanFormat.readInt(data, blockIdx + 1) != 8)
+            throw new IOException("Corrupted chunk reference.");
+        int reference = HuffmanFormat.readInt(data, blockIdx + HuffmanFormat.BLOCK_HEADER_SIZE + 4);
+        if (reference < 0 || reference >= chunkNumber) throw new IOException("Corrupted chunk reference.");
+        return reference;
+    }
+
+    /**
+     * This function takes the compressed data and the index of a DEDUP block, and returns the number of chunks of the
+     * deduplication cache it gives.
+     * */
+    static int dedupCacheSize(byte[] data, int blockIdx) throws IOException {
+        int cachedChunks = HuffmanFormat.readInt(data, blockIdx + HuffmanFormat.BLOCK_HEADER_SIZE);
+        if (HuffmanFormat.readInt(data, blockIdx + 1) != 4 || cachedChunks < 1
+                || cachedChunks > HuffmanFormat.MAX_DEDUP_CHUNKS)
+            throw new IOException("Corrupted deduplication block.");
+        return cachedChunks;
+    }
+
+    /**
+     * This function takes a list of bytes, an index and the end of the block, reads the code lengths table (the
+     * dictionary) there, rebuilds the decoder tables from it, and returns the index after the table.
+     * */
+    int extractOppositeDict(byte[] data, int idx, int blockEnd) throws IOException {
+        idx = readLengths(data, idx, blockEnd, lengths);
+        decoder.build(lengths);
+        return idx;
+    }
+
+    /**
+     * This function takes a list of bytes, an index, the end of the block and an array of 256 lengths, reads the code
+     * lengths table there into the array, and returns the index after the table.
+     * */
+    private static int readLengths(byte[] data, int idx, int blockEnd, int[] lengths) throws IOException {
+        Arrays.fill(lengths, 0);
+        if (idx >= blockEnd) throw new IOException("Corrupted code lengths table.");
+        int form = data[idx++];
+        if (form == HuffmanFormat.SPARSE_TABLE) {
+            if (idx >= blockEnd) throw new IOException("Corrupted code lengths table.");
+            int symbolsCount = (data[idx++] & 0xFF) + 1;
+            if (2 * symbolsCount > blockEnd - idx) throw new IOException("Corrupted code lengths table.");
+            for (int entryIdx = 0; entryIdx < symbolsCount; entryIdx++) {
+                int symbol = data[idx++] & 0xFF;
+                lengths[symbol] = data[idx++] & 0xFF;
+            }
+        } else if (form == HuffmanFormat.DENSE_TABLE) {
+            if (blockEnd - idx < HuffmanFormat.DENSE_TABLE_SIZE) throw new IOException("Corrupted code lengths table.");
+            for (int symbol = 0; symbol < 256; symbol += 2) {
+                lengths[symbol] = (data[idx] & 0xFF) >>> 4;
+                lengths[symbol + 1] = data[idx++] & 0x0F;
+            }
+        } else {
+            throw new IOException("Corrupted code lengths table.");
+        }
+
+        for (int length : lengths)
+            if (length > HuffmanFormat.MAX_CODE_LENGTH)
+                throw new IOException("Corrupted code lengths table.");
+        return idx;
+    }
+
+    /**
+     * This function takes the compressed data and the index of a chunk block, decodes the chunk into the output
+     * buffer, and returns its length.
+     * */
+    int decompressChunk(byte[] data, int blockIdx) throws IOException {
+        int blockType = data[blockIdx];
+        if (!HuffmanFormat.isChunk(blockType))
+            throw new IOException("Unknown block type " + blockType + ".");
+        if (blockType == HuffmanFormat.REF_CHUNK) throw new IOException("Unresolved chunk reference.");
+
+        // Extract the length of the block body and the length of the chunk.
+        int blockLength = data.length - blockIdx < HuffmanFormat.BLOCK_HEADER_SIZE ? -1
+                : HuffmanFormat.readInt(data, blockIdx + 1);
+        if (blockLength < 4 || blockLength > data.length - blockIdx - HuffmanFormat.BLOCK_HEADER_SIZE)
+            throw new IOException("Corrupted block length.");
+        int blockEnd = blockIdx + HuffmanFormat.BLOCK_HEADER_SIZE + blockLength;
+        int chunkLength = HuffmanFormat.readInt(data, blockIdx + HuffmanFormat.BLOCK_HEADER_SIZE);
+        if (chunkLength < 0 || chunkLength > Compression.MAX_CHUNK_SIZE)
+            throw new IOException("Corrupted chunk length.");
+        if (output.length < chunkLength) output = new byte[chunkLength];
+        int idx = blockIdx + HuffmanFormat.BLOCK_HEADER_SIZE + 4;
+        long time = PhaseTimer.start(listener);
+        if (blockType == HuffmanFormat.STORED_CHUNK) {
+            // Copy the chunk straight through.
+            if (blockEnd - idx != chunkLength) throw new IOException("Corrupted stored chunk.");
+            System.arraycopy(data, idx, output, 0, chunkLength);
+        } else if (blockType == HuffmanFormat.RUN_CHUNK) {
+            if (blockEnd - idx != 1) throw new IOException("Corrupted run chunk.");
+            Arrays.fill(output, 0, chunkLength, data[idx]);
+        } else if (blockType == HuffmanFormat.STATIC_CHUNK) {
+            // Decode with the tables of the static dictionary, built when it was loaded.
+            if (blockEnd - idx < 4) throw new IOException("Corrupted static chunk.");
+            HuffmanDecoder staticDecoder = dictionaries.get(HuffmanFormat.readInt(data, idx)).decoder();
+            idx += 4;
+            time = PhaseTimer.lap(listener, CodecListener.Phase.DICTIONARY_READING, time);
+            staticDecoder.decode(new BitReader(data, idx, blockEnd - idx), output, 0, chunkLength);
+            PhaseTimer.lap(listener, CodecListener.Phase.DECODING, time);
+        } else if (blockType == HuffmanFormat.CONTEXT_CHUNK) {
+            decompressContextChunk(data, idx, blockEnd, chunkLength, time);
+        } else if (blockType == HuffmanFormat.NGRAM_CHUNK) {
+            decompressNgramChunk(data, idx, blockEnd, chunkLength, time);
+        } else if (blockType == HuffmanFormat.INTERLEAVED_CHUNK) {
+            decompressInterleavedChunk(data, idx, blockEnd, chunkLength, time);
+        } else {
+            // Extract the opposite dictionary (codes to data).
+            idx = extractOppositeDict(data, idx, blockEnd);
+            time = PhaseTimer.lap(listener, CodecListener.Phase.DICTIONARY_READING, time);
+
+            // Read the compressed data bits in place and decode them.
+            BitReader bitReader = new BitReader(data, idx, blockEnd - idx);
+            decoder.decode(bitReader, output, 0, chunkLength);
+            PhaseTimer.lap(listener, CodecListener.Phase.DECODING, time);
+        }
+        if (listener != null) listener.chunkDecompressed(blockEnd - blockIdx, chunkLength);
+        return chunkLength;
+    }
+
+    /**
+     * This function takes the compressed data, the index after the chunk length of a context chunk block, the end of
+     * the block, the chunk length and the time the decoding started at, reads the code of every context class, and
+     * decodes the chunk into the output buffer, switching codes on the class of every decoded byte.
+     * */
+    private void decompressContextChunk(byte[] data, int idx, int blockEnd, int chunkLength, long time)
+            throws IOException {
+        if (contextDecoders == null) {
+            contextDecoders = new HuffmanDecoder[HuffmanFormat.CONTEXT_CLASSES];
+            for (int contextClass = 0; contextClass < contextDecoders.length; contextClass++)
+                contextDecoders[contextClass] = new HuffmanDecoder();
+        }
+        if (idx >= blockEnd) throw new IOException("Corrupted context classes.");
+        int mask = data[idx++] & 0xFF;
+        for (int contextClass = 0; contextClass < HuffmanFormat.CONTEXT_CLASSES; contextClass++) {
+            // A class without a code gets an empty decoder, which rejects any codeword.
+            if ((mask & 1 << contextClass) != 0) idx = readLengths(data, idx, blockEnd, lengths);
+            else Arrays.fill(lengths, 0);
+            contextDecoders[contextClass].build(lengths);
+        }
+        time = PhaseTimer.lap(listener, CodecListener.Phase.DICTIONARY_READING, time);
+
+        BitReader bitReader = new BitReader(data, idx, blockEnd - idx);
+        HuffmanDecoder.decodeContexts(bitReader, contextDecoders, output, 0, chunkLength);
+        PhaseTimer.lap(listener, CodecListener.Phase.DECODING, time);
+    }
+
+    /**
+     * This function takes the compressed data, the index after the chunk length of an interleaved chunk block, the
+     * end of the block, the chunk length and the time the decoding started at, reads the code and the sub-stream
+     * sizes, and decodes the sub-streams side by side into the output buffer.
+     * */
+    private void decompressInterleavedChunk(byte[] data, int idx, int blockEnd, int chunkLength, long time)
+            throws IOException {
+        idx = extractOppositeDict(data, idx, blockEnd);
+        int sizesEnd = idx + 4 * (HuffmanFormat.STREAMS - 1);
+        if (sizesEnd > blockEnd) throw new IOException("Corrupted sub-stream sizes.");
+        int[] streamOffsets = this.streamOffsets;
+        streamOffsets[0] = sizesEnd;
+        for (int stream = 0; stream < HuffmanFormat.STREAMS; stream++) {
+            int size = stream < HuffmanFormat.STREAMS - 1 ? HuffmanFormat.readInt(data, idx + 4 * stream)
+                    : blockEnd - streamOffsets[stream];
+            if (size < 0 || size > blockEnd - streamOffsets[stream])
+                throw new IOException("Corrupted sub-stream sizes.");
+            streamOffsets[stream + 1] = streamOffsets[stream] + size;
+        }
+        time = PhaseTimer.lap(listener, CodecListener.Phase.DICTIONARY_READING, time);
+        decoder.decodeInterleaved(data, streamOffsets, output, 0, chunkLength);
+        PhaseTimer.lap(listener, CodecListener.Phase.DECODING, time);
+    }
+
+    /**
+     * This function takes the compressed data, the index after the chunk length of an n-gram chunk block, the end of
+     * the block, the chunk length and the time the decoding started at, reads the n-gram code, and decodes the chunk
+     * into the output buffer.
+     * */
+    private void decompressNgramChunk(byte[] data, int idx, int blockEnd, int chunkLength, long time)
+            throws IOException {
+        if (blockEnd - idx < 5) throw new IOException("Corrupted n-gram code.");
+        int width = data[idx++];
+        int symbolsCount = HuffmanFormat.readInt(data, idx);
+        idx += 4;
+        if (width < 2 || width > HuffmanFormat.MAX_SYMBOL_WIDTH || symbolsCount < 0
+                || symbolsCount > chunkLength / width || symbolsCount > blockEnd - idx)
+            throw new IOException("Corrupted n-gram code.");
+        if (ngramSymbols.length < symbolsCount) {
+            ngramSymbols = new long[symbolsCount];
+            ngramLengths = new int[symbolsCount];
+        }
+
+        // Extract the symbols (varint deltas in ascending order) and their codeword lengths.
+        long symbol = 0;
+        for (int symbolIdx = 0; symbolIdx < symbolsCount; symbolIdx++) {
+            long delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (idx >= blockEnd || shift > 28) throw new IOException("Corrupted n-gram code.");
+                byte b = data[idx++];
+                delta |= (long) (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            symbol += delta;
+            ngramSymbols[symbolIdx] = symbol;
+        }
+        if (idx + symbolsCount > blockEnd) throw new IOException("Corrupted n-gram code.");
+        for (int symbolIdx = 0; symbolIdx < symbolsCount; symbolIdx++) {
+            int length = data[idx++] & 0xFF;
+            if (length > HuffmanFormat.MAX_NGRAM_CODE_LENGTH) throw new IOException("Corrupted n-gram code.");
+            ngramLengths[symbolIdx] = length;
+        }
+        decoder.build(ngramLengths, symbolsCount);
+
+        // Copy the raw tail to the end of the chunk, then decode the symbols before it.
+        int tailLength = chunkLength % width;
+        if (idx + tailLength > blockEnd) throw new IOException("Corrupted n-gram code.");
+        System.arraycopy(data, idx, output, chunkLength - tailLength, tailLength);
+        idx += tailLength;
+        time = PhaseTimer.lap(listener, CodecListener.Phase.DICTIONARY_READING, time);
+        BitReader bitReader = new BitReader(data, idx, blockEnd - idx);
+        decoder.decode(bitReader, ngramSymbols, width, output, 0, chunkLength / width);
+        PhaseTimer.lap(listener, CodecListener.Phase.DECODING, time);
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.huffman_coding;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class ChunkIndex {
+    // The number of indexed chunks
+    private int count;
+    // blockOffsets[i] is the offset of the i-th chunk block in the compressed file, blockOffsets[count] is the end
+    private long[] blockOffsets;
+    // chunkOffsets[i] is the offset of the i-th chunk in the original file, chunkOffsets[count] is its size
+    private long[] chunkOffsets;
+
+    /**
+     * This function takes the offset of the first chunk block and creates an empty index.
+     * */
+    public ChunkIndex(long firstBlockOffset) {
+        this(firstBlockOffset, 16);
+    }
+
+    private ChunkIndex(long firstBlockOffset, int capacity) {
+        this.blockOffsets = new long[capacity + 1];
+        this.chunkOffsets = new long[capacity + 1];
+        this.blockOffsets[0] = firstBlockOffset;
+    }
+
+    /**
+     * This function takes a chunk block (as written to the file) and appends it to the index. Every chunk block body
+     * starts with the length of the chunk.
+     * */
+    public void add(byte[] block) {
+        add(block.length, HuffmanFormat.readInt(block, 5));
+    }
+
+    /**
+     * This function takes the size of a chunk block and the length of the chunk and appends them to the index.
+     * */
+    public void add(int blockSize, int chunkLength) {
+        if (count + 2 > blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkOffsets.length * 2);
+        }
+        blockOffsets[count + 1] = blockOffsets[count] + blockSize;
+        chunkOffsets[count + 1] = chunkOffsets[count] + chunkLength;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long blockOffset(int chunk) {
+        return blockOffsets[chunk];
+    }
+
+    public int blockSize(int chunk) {
+        return (int) (blockOffsets[chunk + 1] - blockOffsets[chunk]);
+    }
+
+    public long chunkOffset(int chunk) {
+        return chunkOffsets[chunk];
+    }
+
+    public int chunkLength(int chunk) {
+        return (int) (chunkOffsets[chunk + 1] - chunkOffsets[chunk]);
+    }
+
+    /**
+     * This function takes an offset in the original file (below its size) and returns the chunk that holds it, by a
+     * binary search of the chunk offsets.
+     * */
+    public int chunkAt(long offset) {
+        if (offset < 0 || offset >= chunkOffsets[count])
+            throw new IndexOutOfBoundsException("Offset " + offset + " is out of the original file.");
+        int chunk = Arrays.binarySearch(chunkOffsets, 0, count + 1, offset);
+        if (chunk < 0) return -chunk - 2;
+        // Skip the empty chunks starting at the same offset.
+        while (chunkOffsets[chunk + 1] == offset) chunk++;
+        return chunk;
+    }
+
+    /**
+     * Return the size of the original file
+     * */
+    public long originalSize() {
+        return chunkOffsets[count];
+    }
+
+    /**
+     * Return the size of the compressed file once the index and the end block are written
+     * */
+    public long compressedSize() {
+        return blockOffsets[count] + HuffmanFormat.BLOCK_HEADER_SIZE + 4 + 8L * count + HuffmanFormat.END_BLOCK_SIZE;
+    }
+
+    /**
+     * This function takes an output stream and writes the INDEX block followed by the END block that points to it.
+     * The index block is written at the end of the last indexed chunk block.
+     * */
+    public void write(OutputStream outputStream) throws IOException {
+        outputStream.write(HuffmanFormat.INDEX);
+        HuffmanFormat.writeInt(outputStream, 4 + 8 * count);
+        HuffmanFormat.writeInt(outputStream, count);
+        for (int chunk = 0; chunk < count; chunk++) {
+            HuffmanFormat.writeInt(outputStream, blockSize(chunk));
+            HuffmanFormat.writeInt(outputStream, chunkLength(chunk));
+        }
+
+        outputStream.write(HuffmanFormat.END);
+        HuffmanFormat.writeInt(outputStream, 8);
+        long indexOffset = blockOffsets[count];
+        HuffmanFormat.writeLong(outputStream, indexOffset);
+    }
+
+    /**
+     * This function takes the channel of a compressed file, finds the INDEX block through the END block at the end
+     * of the file, and returns the index it holds. The index of a compact message is its single chunk block.
+     * */
+    public static ChunkIndex read(FileChannel fileChannel) throws IOException {
+        byte[] fileHeader = readFully(fileChannel, 0, HuffmanFormat.HEADER_SIZE);
+        if (HuffmanFormat.isCompact(fileHeader)) return readCompact(fileChannel);
+        long endOffset = fileChannel.size() - HuffmanFormat.END_BLOCK_SIZE;
+        byte[] end = readFully(fileChannel, Math.max(endOffset, 0), HuffmanFormat.END_BLOCK_SIZE);
+        if (endOffset < HuffmanFormat.HEADER_SIZE || end[0] != HuffmanFormat.END || HuffmanFormat.readInt(end, 1) != 8)
+            throw new IOException("Missing chunk index.");
+        long indexOffset = HuffmanFormat.readLong(end, HuffmanFormat.BLOCK_HEADER_SIZE);
+        if (indexOffset < HuffmanFormat.HEADER_SIZE || indexOffset > endOffset - HuffmanFormat.BLOCK_HEADER_SIZE - 4)
+            throw new IOException("Corrupted chunk index.");
+
+        byte[] header = readFully(fileChannel, indexOffset, HuffmanFormat.BLOCK_HEADER_SIZE + 4);
+        int count = HuffmanFormat.readInt(header, HuffmanFormat.BLOCK_HEADER_SIZE);
+        long entriesOffset = indexOffset + header.length;
+        if (header[0] != HuffmanFormat.INDEX || count < 0 || count > (endOffset - entriesOffset) / 8)
+            throw new IOException("Corrupted chunk index.");
+
+        byte[] entries = readFully(fileChannel, entriesOffset, 8 * count);
+        ChunkIndex index = new ChunkIndex(HuffmanFormat.HEADER_SIZE, count);
+        for (int chunk = 0; chunk < count; chunk++) {
+            int blockSize = HuffmanFormat.readInt(entries, 8 * chunk);
+            int chunkLength = HuffmanFormat.readInt(entries, 8 * chunk + 4);
+            if (blockSize < HuffmanFormat.BLOCK_HEADER_SIZE + 4
+                    || blockSize > HuffmanFormat.BLOCK_HEADER_SIZE + HuffmanFormat.MAX_CHUNK_BLOCK_LENGTH
+                    || chunkLength < 0 || chunkLength > Compression.MAX_CHUNK_SIZE)
+                throw new IOException("Corrupted chunk index.");
+            index.add(blockSize, chunkLength);
+        }
+        // The chunks start right after the header, or after the DEDUP block.
+        long firstBlockOffset = HuffmanFormat.HEADER_SIZE + indexOffset - index.blockOffsets[count];
+        if (firstBlockOffset != HuffmanFormat.HEADER_SIZE
+                && firstBlockOffset != HuffmanFormat.HEADER_SIZE + HuffmanFormat.DEDUP_BLOCK_SIZE)
+            throw new IOException("Corrupted chunk index.");
+        for (int chunk = 0; chunk <= count; chunk++)
+            index.blockOffsets[chunk] += firstBlockOffset - HuffmanFormat.HEADER_SIZE;
+        return index;
+    }
+
+    /**
+     * This function takes the channel of a compact message, and returns the index of its single chunk block.
+     * */
+    private static ChunkIndex readCompact(FileChannel fileChannel) throws IOException {
+        byte[] block = readFully(fileChannel, HuffmanFormat.HEADER_SIZE, HuffmanFormat.BLOCK_HEADER_SIZE + 4);
+        HuffmanFormat.checkCompactBlock(block[0]);
+        int blockLength = HuffmanFormat.readInt(block, 1);
+        int chunkLength = HuffmanFormat.readInt(block, HuffmanFormat.BLOCK_HEADER_SIZE);
+        HuffmanFormat.checkBlockLength(block[0], blockLength);
+        if (blockLength < 4 || HuffmanFormat.HEADER_SIZE + HuffmanFormat.BLOCK_HEADER_SIZE + (long) blockLength
+                > fileChannel.size() || chunkLength < 0 || chunkLength > Compression.MAX_CHUNK_SIZE)
+            throw new IOException("Corrupted compact message.");
+        ChunkIndex index = new ChunkIndex(HuffmanFormat.HEADER_SIZE, 1);
+        index.add(HuffmanFormat.BLOCK_HEADER_SIZE + blockLength, chunkLength);
+        return index;
+    }
+
+    /**
+     * This function takes a chunk block read at the offset the index gives (in a buffer that may be longer) and its
+     * size in the index, and checks that the block header agrees with the index.
+     * */
+    static void checkBlock(byte[] block, int blockSize) throws IOException {
+        if (!HuffmanFormat.isChunk(block[0])
+                || HuffmanFormat.readInt(block, 1) != blockSize - HuffmanFormat.BLOCK_HEADER_SIZE)
+            throw new IOException("Corrupted chunk index.");
+    }
+
+    static byte[] readFully(FileChannel fileChannel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (fileChannel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of the compressed file.");
+        return buffer.array();
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.huffman_coding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetSocketAddress;
+
+/**
+ * The Spring configuration of the codec: a shared CodecService bean, and its local HTTP endpoint when
+ * huffman.server.enabled is true. Import it into an application context with @Import(CodecConfiguration.class).
+ * The properties and their defaults:
+ *
+ *     huffman.codec.level=2
+ *     huffman.codec.chunk-size=22680
+ *     huffman.codec.max-concurrent=64
+ *     huffman.server.enabled=false
+ *     huffman.server.address=127.0.0.1
+ *     huffman.server.port=8077
+ *     huffman.server.max-requests=64
+ * */
+@Configuration(proxyBeanMethods = false)
+public class CodecConfiguration {
+    @Bean
+    public CodecService codecService(@Value("${huffman.codec.level:2}") int level,
+                                     @Value("${huffman.codec.chunk-size:22680}") int chunkSize,
+                                     @Value("${huffman.codec.max-concurrent:64}") int maxConcurrent) {
+        return new CodecService(level, chunkSize, maxConcurrent, null);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "huffman.server.enabled", havingValue = "true")
+    public CodecServer codecServer(CodecService codecService,
+                                   @Value("${huffman.server.address:127.0.0.1}") String address,
+                                   @Value("${huffman.server.port:8077}") int port,
+                                   @Value("${huffman.server.max-requests:64}") int maxRequests) {
+        return new CodecServer(codecService, new InetSocketAddress(address, port), maxRequests);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.huffman_coding;
+
+/**
+ * A listener of what the codec does, for metrics. Every method has an empty default, so an implementation only
+ * overrides what it records; the methods are called from the worker threads when chunks are processed concurrently,
+ * so they must be thread-safe. Without a listener the codec does not even read the clock.
+ * */
+public interface CodecListener {
+    /**
+     * The steps a chunk goes through, timed separately
+     * */
+    enum Phase {
+        // Compression: the histogram of the chunk, the code lengths, the canonical codewords, the code table and the
+        // packed codewords
+        FREQUENCY_COUNTING,
+        TREE_BUILDING,
+        CODE_GENERATION,
+        DICTIONARY_WRITING,
+        BIT_PACKING,
+        // Decompression: the code table and the decoder tables built from it, and the decoded bytes
+        DICTIONARY_READING,
+        DECODING,
+        // Both: reading and writing the streams and files
+        IO
+    }
+
+    /**
+     * This function takes a phase and the nanoseconds it just took for one chunk.
+     * */
+    default void phaseCompleted(Phase phase, long nanos) {}
+
+    /**
+     * This function takes the length of a chunk, the size of its compressed block, the number of bits of its packed
+     * codewords, and the entropy of the chunk under the same model (the least number of bits any code could take).
+     * */
+    default void chunkCompressed(int chunkLength, int blockSize, long codeBits, double entropyBits) {}
+
+    /**
+     * This function takes the length of a chunk written without any codeword, as a run of a single byte value or as a
+     * reference to an identical earlier chunk, and the size of its block. Such chunks are not reported to
+     * chunkCompressed, since they have no code to compare with the entropy.
+     * */
+    default void chunkRepeated(int chunkLength, int blockSize) {}
+
+    /**
+     * This function takes the size of a compressed block and the length of the chunk decoded from it.
+     * */
+    default void chunkDecompressed(int blockSize, int chunkLength) {}
+
+    /**
+     * This function takes the number of bytes read and written by a whole compression or decompression, and the
+     * nanoseconds it took.
+     * */
+    default void completed(long inputBytes, long outputBytes, long nanos) {}
+}
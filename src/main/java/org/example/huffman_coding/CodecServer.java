@@ -0,0 +1,202 @@
+package org.example.huffman_coding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP endpoint of a codec service, on the HTTP server of the JDK: a POST to /compress or /decompress streams
+ * the request body through the codec into a chunked response. At most maxRequests requests are processed at once; the
+ * others are answered right away with 503 and a Retry-After header without reading their body (a client still sending
+ * a large body may see the connection reset instead), so that a burst of requests cannot pile up threads and buffers.
+ * A request whose data turns out to be corrupted gets a 400 if no output was sent yet, and its connection is dropped
+ * otherwise.
+ * */
+public class CodecServer {
+    private final CodecService service;
+    private final InetSocketAddress address;
+    private final Semaphore permits;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * This function takes the codec service, the address to listen on, and the number of requests processed at once
+     * (the number of calls the service runs at once by default).
+     * */
+    public CodecServer(CodecService service, InetSocketAddress address, int maxRequests) {
+        if (maxRequests < 1) throw new IllegalArgumentException("At least one request must be allowed at once.");
+        this.service = service;
+        this.address = address;
+        this.permits = new Semaphore(maxRequests);
+    }
+
+    public CodecServer(CodecService service, InetSocketAddress address) {
+        this(service, address, service.getMaxConcurrent());
+    }
+
+    /**
+     * Starts listening and processing requests
+     * */
+    public synchronized void start() throws IOException {
+        if (server != null) throw new IllegalStateException("The server is already started.");
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "codec-http-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = Executors.newCachedThreadPool(threadFactory);
+        server = HttpServer.create(address, 0);
+        server.createContext("/compress", exchange -> handle(exchange, true));
+        server.createContext("/decompress", exchange -> handle(exchange, false));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Return the address the server listens on (with the actual port when started on port 0)
+     * */
+    public synchronized InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : address;
+    }
+
+    /**
+     * Stops listening, waits up to a second for the requests in progress, and stops the threads
+     * */
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(1);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * This function takes an exchange and whether to compress or decompress, and streams the request body through the
+     * codec into the response.
+     * */
+    private void handle(HttpExchange exchange, boolean compress) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            sendError(exchange, 405, "Only POST is supported.");
+            return;
+        }
+        if (!exchange.getRequestURI().getPath().equals(compress ? "/compress" : "/decompress")) {
+            sendError(exchange, 404, "Not found.");
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            // The request body is not read, so the connection cannot be reused.
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.getResponseHeaders().set("Connection", "close");
+            sendError(exchange, 503, "Too many requests in progress.");
+            return;
+        }
+        try {
+            ResponseBody responseBody = new ResponseBody(exchange);
+            try {
+                RequestBody requestBody = new RequestBody(exchange.getRequestBody());
+                if (compress) service.compress(requestBody, responseBody);
+                else service.decompress(requestBody, responseBody);
+                responseBody.finish();
+            } catch (IOException | RuntimeException e) {
+                // Once the response is started, only dropping the connection (which the server does when the handler
+                // throws) tells the client that the response is incomplete.
+                if (responseBody.started) throw e;
+                sendError(exchange, e instanceof IOException ? 400 : 500, e.getMessage());
+            }
+        } finally {
+            permits.release();
+        }
+        exchange.close();
+    }
+
+    /**
+     * This function takes an exchange, an error status and a message, and sends the message as the whole response.
+     * */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = ((message != null ? message : "Failed.") + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    /**
+     * The body of a request, which skips by reading: the request streams of the JDK server skip on the connection
+     * without counting the skipped bytes, and then wait for that many more bytes when the exchange is closed
+     * */
+    private static final class RequestBody extends FilterInputStream {
+        RequestBody(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 512)];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = in.read(buffer, 0, (int) Math.min(n - skipped, buffer.length))) > 0)
+                skipped += read;
+            return skipped;
+        }
+    }
+
+    /**
+     * The body of a successful response: the status and the headers are only sent with the first output, so that an
+     * error found before can still be answered with an error status
+     * */
+    private static final class ResponseBody extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream out;
+        boolean started;
+
+        ResponseBody(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            start(0).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) start(0).write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) out.flush();
+        }
+
+        /**
+         * Sends an empty response if nothing was written, and ends the response
+         * */
+        void finish() throws IOException {
+            start(-1).close();
+        }
+
+        private OutputStream start(long responseLength) throws IOException {
+            if (out == null) {
+                started = true;
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, responseLength);
+                out = exchange.getResponseBody();
+            }
+            return out;
+        }
+    }
+}
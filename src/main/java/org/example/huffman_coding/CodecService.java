@@ -0,0 +1,142 @@
+package org.example.huffman_coding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A reusable codec that can be shared by any number of threads, for embedding the compression in a server. The
+ * compression settings are fixed when the service is created. Every call compresses or decompresses sequentially on
+ * the calling thread, with the encoder context or the chunk decoder of that thread, and buffers its output in one of
+ * maxConcurrent pooled buffers; a call waits while all the buffers are in use, which bounds the memory of the
+ * concurrent calls.
+ * */
+public class CodecService {
+    // The number of calls that run at once when no limit is given
+    public static final int DEFAULT_MAX_CONCURRENT = 64;
+    // The size of the pooled output buffers
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final Compression compression;
+    private final Decompression decompression;
+    private final BufferPool buffers;
+    private final int maxConcurrent;
+
+    public CodecService() {
+        this(Compression.DEFAULT_LEVEL, Compression.CHUNK_SIZE, DEFAULT_MAX_CONCURRENT, null);
+    }
+
+    /**
+     * This function takes the compression level (from Compression.MIN_LEVEL to Compression.MAX_LEVEL), the chunk
+     * size, the number of calls that run at once, and a listener of the metrics of all the calls (null for none).
+     * */
+    public CodecService(int level, int chunkSize, int maxConcurrent, CodecListener listener) {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("At least one call must be allowed at once.");
+        compression = new Compression();
+        compression.setLevel(level);
+        compression.setChunkSize(chunkSize);
+        compression.setListener(listener);
+        decompression = new Decompression();
+        decompression.setListener(listener);
+        buffers = new BufferPool(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Return the number of calls that run at once
+     * */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * This function takes an input stream and an output stream, and writes the compressed data of the input to the
+     * output. Neither stream is closed.
+     * */
+    public void compress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        PooledOutputStream pooledOutputStream = new PooledOutputStream(outputStream, buffers.take(BUFFER_SIZE));
+        try {
+            compression.compress(inputStream, pooledOutputStream);
+            pooledOutputStream.flush();
+        } finally {
+            buffers.release(pooledOutputStream.buffer);
+        }
+    }
+
+    /**
+     * This function takes an input stream of compressed data and an output stream, and writes the decompressed data
+     * to the output. Neither stream is closed.
+     * */
+    public void decompress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        PooledOutputStream pooledOutputStream = new PooledOutputStream(outputStream, buffers.take(BUFFER_SIZE));
+        try {
+            decompression.decompress(inputStream, pooledOutputStream);
+        } finally {
+            buffers.release(pooledOutputStream.buffer);
+        }
+    }
+
+    /**
+     * This function takes a list of bytes and returns their compressed data.
+     * */
+    public byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2 + 64);
+        compress(new ByteArrayInputStream(data), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * This function takes compressed data and returns the decompressed bytes.
+     * */
+    public byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(2 * data.length);
+        decompress(new ByteArrayInputStream(data), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * An output stream that gathers the small writes (headers and short blocks) in a pooled buffer, and passes the
+     * writes larger than the buffer straight through
+     * */
+    private static final class PooledOutputStream extends FilterOutputStream {
+        final byte[] buffer;
+        private int count;
+
+        PooledOutputStream(OutputStream out, byte[] buffer) {
+            super(out);
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flushBuffer();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= buffer.length) {
+                flushBuffer();
+                out.write(b, off, len);
+                return;
+            }
+            if (len > buffer.length - count) flushBuffer();
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.huffman_coding;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that accumulates the codec metrics: the time spent in every phase, the chunks and bytes processed, the
+ * average code length against the entropy, and the throughput. The average code length and the entropy only cover
+ * the chunks that were coded, not the runs and references counted apart. It can be shared by concurrent compressions
+ * and decompressions.
+ * */
+public class CodecStatistics implements CodecListener {
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final LongAdder chunks = new LongAdder();
+    // The bytes before and after the codec, per chunk (without the file header and index)
+    private final LongAdder chunkBytes = new LongAdder();
+    private final LongAdder blockBytes = new LongAdder();
+    // The packed codeword bits of the compressed chunks and their entropy under the same model
+    private final LongAdder codeBits = new LongAdder();
+    private final DoubleAdder entropyBits = new DoubleAdder();
+    private final LongAdder compressedChunkBytes = new LongAdder();
+    // The chunks written as runs or references, without codewords, and their bytes
+    private final LongAdder repeatedChunks = new LongAdder();
+    private final LongAdder repeatedChunkBytes = new LongAdder();
+    // The totals of the whole operations
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+
+    public CodecStatistics() {
+        for (Phase phase : Phase.values()) phaseNanos.put(phase, new LongAdder());
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    @Override
+    public void chunkCompressed(int chunkLength, int blockSize, long codeBits, double entropyBits) {
+        chunks.increment();
+        chunkBytes.add(chunkLength);
+        blockBytes.add(blockSize);
+        compressedChunkBytes.add(chunkLength);
+        this.codeBits.add(codeBits);
+        this.entropyBits.add(entropyBits);
+    }
+
+    @Override
+    public void chunkRepeated(int chunkLength, int blockSize) {
+        chunks.increment();
+        chunkBytes.add(chunkLength);
+        blockBytes.add(blockSize);
+        repeatedChunks.increment();
+        repeatedChunkBytes.add(chunkLength);
+    }
+
+    @Override
+    public void chunkDecompressed(int blockSize, int chunkLength) {
+        chunks.increment();
+        chunkBytes.add(chunkLength);
+        blockBytes.add(blockSize);
+    }
+
+    @Override
+    public void completed(long inputBytes, long outputBytes, long nanos) {
+        this.inputBytes.add(inputBytes);
+        this.outputBytes.add(outputBytes);
+        elapsedNanos.add(nanos);
+    }
+
+    /**
+     * Takes a phase and returns the nanoseconds spent in it
+     * */
+    public long phaseNanos(Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * Return the number of chunks compressed or decompressed
+     * */
+    public long chunks() {
+        return chunks.sum();
+    }
+
+    /**
+     * Return the number of chunks compressed as runs or references, which the average code length leaves out
+     * */
+    public long repeatedChunks() {
+        return repeatedChunks.sum();
+    }
+
+    /**
+     * Return the number of bytes read by the operations
+     * */
+    public long inputBytes() {
+        return inputBytes.sum();
+    }
+
+    /**
+     * Return the number of bytes written by the operations
+     * */
+    public long outputBytes() {
+        return outputBytes.sum();
+    }
+
+    /**
+     * Return the average number of codeword bits per coded byte (NaN before any coded chunk)
+     * */
+    public double averageCodeLength() {
+        return (double) codeBits.sum() / compressedChunkBytes.sum();
+    }
+
+    /**
+     * Return the entropy in bits per coded byte, the bound the average code length is compared to
+     * */
+    public double entropy() {
+        return entropyBits.sum() / compressedChunkBytes.sum();
+    }
+
+    /**
+     * Return the size of the compressed chunk blocks over the size of the chunks
+     * */
+    public double ratio() {
+        return (double) blockBytes.sum() / chunkBytes.sum();
+    }
+
+    /**
+     * Return the uncompressed megabytes (2^20 bytes) processed per second of the operations
+     * */
+    public double throughput() {
+        long uncompressedBytes = chunkBytes.sum();
+        return uncompressedBytes / (double) (1 << 20) / (elapsedNanos.sum() / 1e9);
+    }
+
+    /**
+     * Clears all the metrics
+     * */
+    public void reset() {
+        for (LongAdder nanos : phaseNanos.values()) nanos.reset();
+        for (LongAdder adder : new LongAdder[]{chunks, chunkBytes, blockBytes, codeBits, compressedChunkBytes,
+                repeatedChunks, repeatedChunkBytes, inputBytes, outputBytes, elapsedNanos})
+            adder.reset();
+        entropyBits.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Chunks: %d, bytes in: %d, bytes out: %d, ratio: %.4f, throughput: %.2f MB/s%n",
+                chunks(), inputBytes(), outputBytes(), ratio(), throughput()));
+        if (compressedChunkBytes.sum() > 0)
+            report.append(String.format("Average code length: %.4f bits/byte, entropy: %.4f bits/byte%n",
+                    averageCodeLength(), entropy()));
+        if (repeatedChunks() > 0)
+            report.append(String.format("Runs and references: %d chunks, %d bytes (not in the averages)%n",
+                    repeatedChunks(), repeatedChunkBytes.sum()));
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos(phase);
+            if (nanos > 0) report.append(String.format("%-19s %10.3f ms%n", phase, nanos / 1e6));
+        }
+        return report.toString();
+    }
+}
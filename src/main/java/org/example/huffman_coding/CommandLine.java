@@ -0,0 +1,264 @@
+package org.example.huffman_coding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The non-interactive command line: compresses or decompresses one file or stream, as set by flags, and exits with
+ * EXIT_OK, EXIT_FAILURE (an I/O error or corrupted data) or EXIT_USAGE (invalid arguments). It only uses the JDK,
+ * so it starts without any framework bootstrap and can run in shell pipelines:
+ *
+ *     java -jar huffman_20011629.jar -c -3 < access.log > access.log.hc
+ *     java -jar huffman_20011629.jar -d -i access.log.hc | grep ERROR
+ * */
+public final class CommandLine {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+    // The buffer size of the standard streams and the files
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: huffman [-c | -d] [-1 .. -4] [-T threads] [-b chunk size] [--dedup chunks] [-i input] [-o output]"
+                    + " [-v]",
+            "       huffman --serve port [-1 .. -4] [-b chunk size] [--max-requests N] [-v]",
+            "  -c, --compress      compress (the default)",
+            "  -d, --decompress    decompress",
+            "  -1 .. -4            compression level, from the fastest to the smallest (default 2)",
+            "  -T, --threads N     number of threads (default 1)",
+            "  -b, --chunk-size N  input bytes per chunk, with an optional K or M suffix (default "
+                    + Compression.CHUNK_SIZE + ")",
+            "  --dedup N           write chunks repeating one of the last N chunks as references",
+            "  -i, --input PATH    input file, or - for the standard input (the default)",
+            "  -o, --output PATH   output file, or - for the standard output (the default)",
+            "  -v, --verbose       print the codec statistics to the standard error",
+            "  --serve PORT        serve POST /compress and /decompress on the local port instead",
+            "  --max-requests N    number of requests served at once (default "
+                    + CodecService.DEFAULT_MAX_CONCURRENT + ")",
+            "  -h, --help          print this help");
+
+    private CommandLine() {}
+
+    public static void main(String[] args) {
+        int status = run(args, System.err);
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /**
+     * This function takes the command line arguments and the stream to report errors on, runs the command, and
+     * returns the exit status.
+     * */
+    static int run(String[] args, PrintStream err) {
+        boolean decompress = false;
+        int level = Compression.DEFAULT_LEVEL;
+        int threads = 1;
+        int chunkSize = Compression.CHUNK_SIZE;
+        int deduplication = 0;
+        String input = "-";
+        String output = "-";
+        boolean verbose = false;
+        int port = -1;
+        int maxRequests = CodecService.DEFAULT_MAX_CONCURRENT;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-c", "--compress" -> decompress = false;
+                    case "-d", "--decompress" -> decompress = true;
+                    case "-T", "--threads" -> threads = parseInt(arg, value(args, ++i), 1, 1024);
+                    case "-b", "--chunk-size" -> chunkSize = parseSize(arg, value(args, ++i));
+                    case "--dedup" ->
+                            deduplication = parseInt(arg, value(args, ++i), 0, HuffmanFormat.MAX_DEDUP_CHUNKS);
+                    case "-i", "--input" -> input = value(args, ++i);
+                    case "-o", "--output" -> output = value(args, ++i);
+                    case "-v", "--verbose" -> verbose = true;
+                    case "--serve" -> port = parseInt(arg, value(args, ++i), 0, 65535);
+                    case "--max-requests" -> maxRequests = parseInt(arg, value(args, ++i), 1, 1 << 16);
+                    case "-h", "--help" -> {
+                        err.println(USAGE);
+                        return EXIT_OK;
+                    }
+                    default -> {
+                        if (arg.length() != 2 || arg.charAt(0) != '-' || arg.charAt(1) < '0' + Compression.MIN_LEVEL
+                                || arg.charAt(1) > '0' + Compression.MAX_LEVEL)
+                            throw new IllegalArgumentException("Unknown option " + arg + ".");
+                        level = arg.charAt(1) - '0';
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            err.println("huffman: " + e.getMessage());
+            err.println("Try huffman --help.");
+            return EXIT_USAGE;
+        }
+
+        CodecStatistics statistics = verbose ? new CodecStatistics() : null;
+        if (port >= 0)
+            return serve(new CodecService(level, chunkSize, maxRequests, statistics), port, statistics, err);
+        OutputFile outputFile = new OutputFile(output.equals("-") ? null : Paths.get(output));
+        try {
+            if (decompress) {
+                Decompression decompression = new Decompression(threads);
+                decompression.setPipelined(threads > 1);
+                decompression.setListener(statistics);
+                try (InputStream inputStream = openInput(input);
+                     OutputStream outputStream = outputFile.open()) {
+                    decompression.decompress(inputStream, outputStream);
+                }
+            } else {
+                Compression compression = new Compression(threads);
+                compression.setLevel(level);
+                compression.setChunkSize(chunkSize);
+                compression.setDeduplication(deduplication);
+                compression.setListener(statistics);
+                compress(compression, input, outputFile, threads);
+            }
+        } catch (IOException | RuntimeException e) {
+            outputFile.deletePartial();
+            err.println("huffman: " + message(e));
+            return EXIT_FAILURE;
+        }
+        if (statistics != null) err.print(statistics);
+        return EXIT_OK;
+    }
+
+    /**
+     * This function takes a codec service, a port, the statistics of the service (or null) and the stream to report
+     * on, serves the codec on the loopback address until the process is stopped, and returns the exit status if the
+     * server cannot start. The statistics are printed when the process stops.
+     * */
+    private static int serve(CodecService service, int port, CodecStatistics statistics, PrintStream err) {
+        CodecServer server = new CodecServer(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        try {
+            server.start();
+        } catch (IOException e) {
+            err.println("huffman: " + message(e));
+            return EXIT_FAILURE;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (statistics != null) err.print(statistics);
+        }));
+        err.println("huffman: listening on " + server.getAddress());
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * This function takes a compression, an input path (- for the standard input), the output file and the number of
+     * threads, and compresses the input. Regular files are read through memory-mapped windows, and streams are
+     * pipelined when several threads are used. The input is opened before the output, so that a missing input leaves
+     * the output untouched.
+     * */
+    private static void compress(Compression compression, String input, OutputFile outputFile, int threads)
+            throws IOException {
+        if (!input.equals("-") && Files.isRegularFile(Paths.get(input))) {
+            try (FileChannel fileChannel = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+                 OutputStream outputStream = outputFile.open()) {
+                compression.compress(fileChannel, outputStream);
+            }
+        } else {
+            compression.setPipelined(threads > 1);
+            try (InputStream inputStream = openInput(input);
+                 OutputStream outputStream = outputFile.open()) {
+                compression.compress(inputStream, outputStream);
+            }
+        }
+    }
+
+    private static InputStream openInput(String input) throws IOException {
+        InputStream inputStream = input.equals("-") ? new FileInputStream(FileDescriptor.in)
+                : Files.newInputStream(Paths.get(input));
+        return new BufferedInputStream(inputStream, BUFFER_SIZE);
+    }
+
+    /**
+     * This function takes the error that stopped the command and returns its message for the user.
+     * */
+    private static String message(Exception e) {
+        if (e instanceof NoSuchFileException) return "No such file " + ((NoSuchFileException) e).getFile() + ".";
+        if (e instanceof AccessDeniedException)
+            return "Permission denied: " + ((AccessDeniedException) e).getFile() + ".";
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    /**
+     * This function takes the arguments and the index of the value of an option, and returns the value.
+     * */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) throw new IllegalArgumentException("Missing value of " + args[index - 1] + ".");
+        return args[index];
+    }
+
+    private static int parseInt(String option, String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) return parsed;
+        } catch (NumberFormatException ignored) {
+            // Reported below with the valid range.
+        }
+        throw new IllegalArgumentException("The value of " + option + " must be between " + min + " and " + max + ".");
+    }
+
+    /**
+     * This function takes an option and a size with an optional K or M suffix, and returns the size in bytes.
+     * */
+    private static int parseSize(String option, String value) {
+        int shift = 0;
+        if (value.endsWith("K") || value.endsWith("k")) shift = 10;
+        else if (value.endsWith("M") || value.endsWith("m")) shift = 20;
+        if (shift > 0) value = value.substring(0, value.length() - 1);
+        return parseInt(option, value, 1, Compression.MAX_CHUNK_SIZE >> shift) << shift;
+    }
+
+    /**
+     * The output of the command: a file (or the standard output when the path is null), which is only deleted on
+     * failure if this command opened it, so that an error before the output is opened leaves an existing file intact
+     * */
+    private static final class OutputFile {
+        private final Path path;
+        private boolean opened;
+
+        OutputFile(Path path) {
+            this.path = path;
+        }
+
+        OutputStream open() throws IOException {
+            OutputStream outputStream = path == null ? new FileOutputStream(FileDescriptor.out)
+                    : Files.newOutputStream(path);
+            opened = true;
+            return new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        }
+
+        void deletePartial() {
+            if (path == null || !opened) return;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // The error that stopped the command is the one reported.
+            }
+        }
+    }
+}
@@ -1,208 +1,926 @@
 package org.example.huffman_coding;
 
+import org.example.huffman_coding.CodecListener.Phase;
+import org.example.huffman_coding.Hashing.NSpaceHash;
+
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Compression {
-    public Compression() {}
+    // The default number of input bytes in every chunk (but the last); each chunk gets its own Huffman code
+    public static final int CHUNK_SIZE = 22680;
+    // The largest chunk size allowed
+    public static final int MAX_CHUNK_SIZE = 1 << 24;
+    // The compression levels of setLevel, from the fastest to the smallest output
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 4;
+    public static final int DEFAULT_LEVEL = 2;
+
+    // The number of chunks compressed concurrently when no executor is given (1 compresses sequentially)
+    private final int parallelism;
+    // An executor supplied by the caller, or null to use a pool of parallelism threads
+    private final ExecutorService executor;
+    // The number of chunks mapped at once when compressing a file
+    private static final int MAPPED_WINDOW_CHUNKS = 2048;
+    // The number of bytes in every symbol (1 codes single bytes; 2 to 4 code n-grams when it makes chunks smaller)
+    private int symbolWidth = 1;
+    // The number of input bytes in every chunk (but the last)
+    private int chunkSize = CHUNK_SIZE;
+    // Whether the byte chunks are split into interleaved sub-streams
+    private boolean interleaved;
+    // Whether the chunks may be coded with an order-1 model
+    private boolean contextModeling;
+    // The static dictionary the chunks may be coded with, or null
+    private StaticDictionary dictionary;
+    // Whether reading, compressing and writing the streams run in separate threads
+    private boolean pipelined;
+    // The number of recent chunks repeated chunks are looked up in (0 disables the deduplication)
+    private int deduplication;
+    // The listener of the metrics, or null
+    private CodecListener listener;
+    // The encoding state of each thread
+    private final ThreadLocal<EncoderContext> encoderContexts = ThreadLocal.withInitial(EncoderContext::new);
+
+    public Compression() {
+        this(1);
+    }
 
-    private static class Node {
-        byte key;
-        int frequency;
-        Node left;
-        Node right;
+    public Compression(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("The parallelism must be at least 1.");
+        this.parallelism = parallelism;
+        this.executor = null;
+    }
 
-        public Node(byte key, int frequency) {
-            this.key = key;
-            this.frequency = frequency;
-            this.left = null;
-            this.right = null;
-        }
+    public Compression(ExecutorService executor) {
+        this.parallelism = 1;
+        this.executor = executor;
     }
 
     /**
-     * This function takes a list of bytes and writes an integer to the file.
-     * The integer is represented as a string
-     * of bits (4-bytes).
+     * This function takes a level from MIN_LEVEL to MAX_LEVEL and sets the codec options of the level: 1 codes single
+     * bytes into interleaved sub-streams (the fastest to decode), 2 also tries an order-1 context model per chunk, 3
+     * and 4 also try 2-byte and 3-byte symbols.
      * */
-    private void writeInt(FileOutputStream fileOutputStream, String binaryString) throws IOException {
-        binaryString = String.format("%32s", binaryString).replace(' ', '0');
-        byte[] bytes = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            String byteString = binaryString.substring(i * 8, (i + 1) * 8);
-            int byteValue = Integer.parseInt(byteString, 2);
-            bytes[i] = (byte) byteValue;
-        }
-        fileOutputStream.write(bytes);
-        fileOutputStream.flush();
+    public void setLevel(int level) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL)
+            throw new IllegalArgumentException("The level must be between " + MIN_LEVEL + " and " + MAX_LEVEL + ".");
+        setInterleaved(level == 1);
+        setContextModeling(level >= 2);
+        setSymbolWidth(Math.max(1, level - 1));
+    }
+
+    /**
+     * This function takes a symbol width from 1 to MAX_SYMBOL_WIDTH bytes. With a width above 1 every chunk is also
+     * coded as a sequence of width-byte symbols (n-grams), which suits repetitive data such as logs, and the n-gram
+     * block is kept only when it is smaller than the byte block, so the ratio never gets worse.
+     * */
+    public void setSymbolWidth(int symbolWidth) {
+        if (symbolWidth < 1 || symbolWidth > HuffmanFormat.MAX_SYMBOL_WIDTH)
+            throw new IllegalArgumentException("The symbol width must be between 1 and "
+                    + HuffmanFormat.MAX_SYMBOL_WIDTH + ".");
+        this.symbolWidth = symbolWidth;
+    }
+
+    public int getSymbolWidth() {
+        return symbolWidth;
     }
 
     /**
-     * This function takes a list of n bytes hex strings and returns a map of each hex string and its frequency.
+     * This function takes the number of input bytes per chunk, from 1 to MAX_CHUNK_SIZE. Smaller chunks adapt the
+     * code to local statistics and give finer-grained parallelism, larger chunks spend fewer bytes on code tables.
      * */
-    private Map<Byte, Integer> getFrequenciesForNBytes(byte[] nBytes) {
-        int[] frequencies = new int[256];
-        for (byte nByte : nBytes)
-            frequencies[nByte & 0xFF]++;
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("The chunk size must be between 1 and " + MAX_CHUNK_SIZE + ".");
+        this.chunkSize = chunkSize;
+    }
 
-        Map<Byte, Integer> frequencyMap = new HashMap<>();
-        for (int i = 0; i < 256; i++)
-            if (frequencies[i] > 0)
-                frequencyMap.put((byte) i, frequencies[i]);
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * This function takes whether to split the codewords of every byte chunk into HuffmanFormat.STREAMS interleaved
+     * sub-streams (off by default). The decoder then decodes the sub-streams side by side, so consecutive lookups do
+     * not wait on each other, which speeds decoding up at the cost of 12 more bytes per chunk.
+     * */
+    public void setInterleaved(boolean interleaved) {
+        this.interleaved = interleaved;
+    }
 
-        return frequencyMap;
+    public boolean isInterleaved() {
+        return interleaved;
     }
 
     /**
-     * This function takes a map of each hex string and its frequency and returns the root of the Huffman tree.
+     * This function takes whether to also code every chunk with an order-1 model (off by default): one code per
+     * context class of the previous byte, which captures the byte-to-byte correlation of text and logs. The context
+     * block is kept only when it is smaller than the other blocks, so the ratio never gets worse, but every chunk is
+     * counted and built twice.
      * */
-    private Node huffmanCoding(Map<Byte, Integer> frequencies) {
-        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(o -> o.frequency));
-        for (Map.Entry<Byte, Integer> entry : frequencies.entrySet())
-            priorityQueue.add(new Node(entry.getKey(), entry.getValue()));
+    public void setContextModeling(boolean contextModeling) {
+        this.contextModeling = contextModeling;
+    }
+
+    public boolean isContextModeling() {
+        return contextModeling;
+    }
 
-        if (priorityQueue.size() == 1) {
-            Node peek = priorityQueue.poll();
-            Node root = new Node(peek.key, peek.frequency);
-            root.left = peek;
-            return root;
+    /**
+     * This function takes a static dictionary to code the chunks with (null for none, the default). A chunk coded
+     * with it carries the dictionary id instead of a code table, which suits small payloads similar to the corpus the
+     * dictionary was trained on; the decoder must find the dictionary in its registry. A chunk is still coded with
+     * its own code when that is smaller. An input that fits in one static chunk is written as a compact message, with
+     * 16 bytes of framing around the codewords (the header, the block header, the chunk length and the dictionary id)
+     * instead of 46, so a message of n bytes coded at b bits per byte gets smaller once n * (1 - b / 8) > 16, that is
+     * from about 43 bytes at 5 bits per byte, or 64 bytes at 6.
+     * */
+    public void setDictionary(StaticDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public StaticDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * This function takes whether to compress streams in a pipeline (off by default): a reader thread reads the
+     * chunks into pooled buffers while the chunks read before are compressed and written, so the latency of slow
+     * storage overlaps with the compression. It applies to compress(InputStream, OutputStream), and compress(String)
+     * then reads the file as a stream instead of mapping it.
+     * */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * This function takes the number of recent chunks to deduplicate against, from 0 (the default, no
+     * deduplication) to MAX_DEDUP_CHUNKS. Every chunk is fingerprinted, and a chunk identical to one of the most
+     * recently used that many chunks is written as a reference to it instead of being compressed again. The
+     * decompressor keeps as many decoded chunks, so both sides hold about that many chunks in memory.
+     * */
+    public void setDeduplication(int cachedChunks) {
+        if (cachedChunks < 0 || cachedChunks > HuffmanFormat.MAX_DEDUP_CHUNKS)
+            throw new IllegalArgumentException("The deduplication cache must hold between 0 and "
+                    + HuffmanFormat.MAX_DEDUP_CHUNKS + " chunks.");
+        this.deduplication = cachedChunks;
+    }
+
+    public int getDeduplication() {
+        return deduplication;
+    }
+
+    /**
+     * This function takes a listener that receives the timing of every phase and the size of every chunk (null
+     * disables the metrics, which is the default).
+     * */
+    public void setListener(CodecListener listener) {
+        this.listener = listener;
+    }
+
+    public CodecListener getListener() {
+        return listener;
+    }
+
+    /**
+     * This function takes the codeword lengths (or the frequencies, which are used by the same byte values) and
+     * returns the size of the code lengths table in bytes.
+     * */
+    private int getDictSize(int[] lengths) {
+        int symbolsCount = 0;
+        for (int length : lengths)
+            if (length > 0) symbolsCount++;
+        return 1 + Math.min(1 + 2 * symbolsCount, HuffmanFormat.DENSE_TABLE_SIZE);
+    }
+
+    /**
+     * This function takes a block buffer, an index in it, and the codeword lengths, writes the code lengths table
+     * (the dictionary) there, in its sparse or dense form, whichever is smaller, and returns the index after it.
+     * */
+    private int writeDict(byte[] block, int idx, int[] lengths) {
+        int symbolsCount = 0;
+        for (int length : lengths)
+            if (length > 0) symbolsCount++;
+
+        if (1 + 2 * symbolsCount < HuffmanFormat.DENSE_TABLE_SIZE) {
+            block[idx++] = HuffmanFormat.SPARSE_TABLE;
+            block[idx++] = (byte) (symbolsCount - 1);
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (lengths[symbol] == 0) continue;
+                block[idx++] = (byte) symbol;
+                block[idx++] = (byte) lengths[symbol];
+            }
+        } else {
+            block[idx++] = HuffmanFormat.DENSE_TABLE;
+            for (int symbol = 0; symbol < 256; symbol += 2)
+                block[idx++] = (byte) (lengths[symbol] << 4 | lengths[symbol + 1]);
         }
+        return idx;
+    }
 
-        while (priorityQueue.size() > 1) {
-            Node left = priorityQueue.poll();
-            Node right = priorityQueue.poll();
-            assert right != null;
-            Node parent = new Node((byte)(left.key | right.key), left.frequency + right.frequency);
-            parent.left = left;
-            parent.right = right;
-            priorityQueue.add(parent);
+    /**
+     * This function takes a bit writer, the codewords and their lengths, and a list of bytes with an offset and a
+     * length, and packs the codewords of the bytes. It returns the number of bytes the packed data takes.
+     * */
+    private int writeCompressedData(BitWriter bitWriter, int[] codes, int[] lengths, byte[] nBytes, int offset,
+                                    int length) {
+        bitWriter.reset();
+        for (int i = offset; i < offset + length; i++)
+            bitWriter.writeBits(codes[nBytes[i] & 0xFF], lengths[nBytes[i] & 0xFF]);
+
+        // Pad the compressed data with 0s to a multiple of 8.
+        return bitWriter.flush();
+    }
+
+    /**
+     * This function takes the bit writers of the sub-streams, the codewords and their lengths, and a list of bytes
+     * with an offset and a length, and packs the codeword of byte i into sub-stream i % STREAMS. It returns the
+     * number of bytes all the packed sub-streams take.
+     * */
+    private int writeInterleavedCompressedData(BitWriter[] bitWriters, int[] codes, int[] lengths, byte[] nBytes,
+                                               int offset, int length) {
+        for (BitWriter bitWriter : bitWriters) bitWriter.reset();
+        BitWriter writer0 = bitWriters[0], writer1 = bitWriters[1], writer2 = bitWriters[2], writer3 = bitWriters[3];
+        int end = offset + length;
+        int i = offset;
+        for (; i + 4 <= end; i += 4) {
+            writer0.writeBits(codes[nBytes[i] & 0xFF], lengths[nBytes[i] & 0xFF]);
+            writer1.writeBits(codes[nBytes[i + 1] & 0xFF], lengths[nBytes[i + 1] & 0xFF]);
+            writer2.writeBits(codes[nBytes[i + 2] & 0xFF], lengths[nBytes[i + 2] & 0xFF]);
+            writer3.writeBits(codes[nBytes[i + 3] & 0xFF], lengths[nBytes[i + 3] & 0xFF]);
         }
+        for (int stream = 0; i < end; i++, stream++)
+            bitWriters[stream].writeBits(codes[nBytes[i] & 0xFF], lengths[nBytes[i] & 0xFF]);
 
-        return priorityQueue.poll();
+        int bytesCount = 0;
+        for (BitWriter bitWriter : bitWriters) bytesCount += bitWriter.flush();
+        return bytesCount;
     }
 
     /**
-     * This function takes the root of the Huffman tree and returns a Map of each hex string and its codeword.
+     * This function takes a bit writer, an encoder context holding the codes of the context classes, and a list of
+     * bytes with an offset and a length, and packs the codeword of every byte in the code of the class of the byte
+     * before it. It returns the number of bytes the packed data takes.
      * */
-    private void getCodes(Node root, String code, Map<Byte, String> codes) {
-        if (root == null) return;
+    private int writeContextCompressedData(BitWriter bitWriter, EncoderContext context, byte[] nBytes, int offset,
+                                           int length) {
+        bitWriter.reset();
+        int[][] codes = context.contextCodes;
+        int[][] lengths = context.contextLengths;
+        int contextClass = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = nBytes[i] & 0xFF;
+            bitWriter.writeBits(codes[contextClass][symbol], lengths[contextClass][symbol]);
+            contextClass = HuffmanFormat.contextClass(symbol);
+        }
+        return bitWriter.flush();
+    }
 
-        if (root.left == null && root.right == null) {
-            codes.put(root.key, code);
-            return;
+    /**
+     * This function takes a bit writer, an encoder context holding the dictionary of an n-gram code, a list of bytes
+     * with an offset and a length, and the symbol width, and packs the codewords of the symbols (the bytes left over
+     * at the end are not packed). It returns the number of bytes the packed data takes.
+     * */
+    private int writeNgramCompressedData(BitWriter bitWriter, EncoderContext context, byte[] data, int offset,
+                                         int length, int width) {
+        bitWriter.reset();
+        NSpaceHash dictionary = context.ngramDictionary;
+        int[] slotCodewords = context.ngramSlotCodewords;
+        int end = offset + length / width * width;
+        for (int i = offset; i < end; i += width) {
+            int codeword = slotCodewords[dictionary.indexOf(EncoderContext.ngramKey(data, i, width))];
+            bitWriter.writeBits(codeword >>> 5, codeword & 0x1F);
         }
+        return bitWriter.flush();
+    }
 
-        assert root.left != null;
-        getCodes(root.left, code + "0", codes);
-        getCodes(root.right, code + "1", codes);
+    /**
+     * This function takes an encoder context holding the codes of the context classes, and returns the size of their
+     * code tables (the class mask and a code lengths table per used class) in bytes.
+     * */
+    private int getContextDictSize(EncoderContext context) {
+        int size = 1;
+        for (int contextClass = 0; contextClass < HuffmanFormat.CONTEXT_CLASSES; contextClass++)
+            if (isUsed(context.contextLengths[contextClass])) size += getDictSize(context.contextLengths[contextClass]);
+        return size;
+    }
+
+    private static boolean isUsed(int[] lengths) {
+        for (int length : lengths)
+            if (length > 0) return true;
+        return false;
     }
 
     /**
-     * This function takes a file output stream, a dictionary, and the last entry key and writes the dictionary to the
-     * file.
+     * This function takes an encoder context holding an n-gram code, and returns the size of its code table
+     * (width, symbols count, symbols and lengths) in bytes.
      * */
-    private void writeDict(FileOutputStream fileOutputStream, Map<Byte, String> codes) throws IOException {
+    private int getNgramDictSize(EncoderContext context) {
+        int symbolsCount = context.ngramTable.size();
+        int size = 1 + 4 + symbolsCount;
+        long previous = 0;
+        for (int i = 0; i < symbolsCount; i++) {
+            size += HuffmanFormat.varLongSize(context.ngramSymbols[i] - previous);
+            previous = context.ngramSymbols[i];
+        }
+        return size;
+    }
 
-        for (Map.Entry<Byte, String> entry : codes.entrySet()) {
-            Byte key = entry.getKey();
-            String val = entry.getValue();
-            fileOutputStream.write(key);
-            fileOutputStream.write(":".getBytes());
-            fileOutputStream.write(val.length());
-            writeInt(fileOutputStream, val);
+    /**
+     * This function takes a chunk of the input (a list of bytes with an offset and a length), builds its Huffman
+     * code, and returns the compressed chunk block. All the work happens in the encoder context of the calling thread,
+     * so chunks can be compressed concurrently and the returned block is the only allocation.
+     * */
+    byte[] compressChunk(byte[] data, int offset, int length) throws IOException {
+        EncoderContext context = encoderContexts.get();
+        CodecListener listener = this.listener;
+
+        // Build the code lengths of the chunk.
+        long time = PhaseTimer.start(listener);
+        context.countFrequencies(data, offset, length);
+        time = PhaseTimer.lap(listener, Phase.FREQUENCY_COUNTING, time);
+
+        // A chunk of a single byte value is run-length coded. Without n-grams or context modeling, a chunk whose
+        // entropy leaves no room for the code table (already compressed or random data) is stored without building
+        // any code; the other models may still predict bytes the order-0 entropy cannot, so they are always tried.
+        if (context.frequencies[data[offset] & 0xFF] == length) return compressRunChunk(data[offset], length, time);
+        double entropyBits = context.entropyBits();
+        StaticDictionary dictionary = this.dictionary;
+        long staticBlockLength = dictionary == null ? Long.MAX_VALUE
+                : 8 + (dictionary.codeBits(context.frequencies) + 7) / 8;
+        int width = symbolWidth;
+        if (width == 1 && !contextModeling
+                && 4 + getDictSize(context.frequencies) + entropyBits / 8 >= Math.min(4 + length, staticBlockLength)) {
+            if (staticBlockLength < 4 + length)
+                return compressStaticChunk(context, dictionary, data, offset, length, entropyBits, time);
+            return compressStoredChunk(data, offset, length, entropyBits, time);
+        }
+        context.buildLengths();
+        time = PhaseTimer.lap(listener, Phase.TREE_BUILDING, time);
+
+        // With n-grams or context modeling, build their code lengths too and keep whichever block is smallest.
+        long blockLength = 4 + getDictSize(context.lengths) + (context.codeBits() + 7) / 8;
+        long ngramBlockLength = Long.MAX_VALUE;
+        if (width > 1) {
+            context.countNgrams(data, offset, length, width);
+            time = PhaseTimer.lap(listener, Phase.FREQUENCY_COUNTING, time);
+            long ngramBits = context.buildNgramLengths();
+            time = PhaseTimer.lap(listener, Phase.TREE_BUILDING, time);
+            ngramBlockLength = 4 + getNgramDictSize(context) + length % width + (ngramBits + 7) / 8;
+        }
+        long contextBlockLength = Long.MAX_VALUE;
+        if (contextModeling) {
+            context.countContexts(data, offset, length);
+            time = PhaseTimer.lap(listener, Phase.FREQUENCY_COUNTING, time);
+            long contextBits = context.buildContextLengths();
+            time = PhaseTimer.lap(listener, Phase.TREE_BUILDING, time);
+            contextBlockLength = 4 + getContextDictSize(context) + (contextBits + 7) / 8;
         }
+        long bestBlockLength = Math.min(blockLength, Math.min(ngramBlockLength, contextBlockLength));
+        if (staticBlockLength <= bestBlockLength && staticBlockLength < 4 + length)
+            return compressStaticChunk(context, dictionary, data, offset, length, entropyBits, time);
+        if (bestBlockLength >= 4 + length) return compressStoredChunk(data, offset, length, entropyBits, time);
+        if (ngramBlockLength < blockLength && ngramBlockLength <= contextBlockLength)
+            return compressNgramChunk(context, data, offset, length, width, time);
+        if (contextBlockLength < blockLength) return compressContextChunk(context, data, offset, length, time);
+
+        // Build the canonical codewords, and pack the compressed data first, so that the block length is known.
+        context.assignCodes();
+        time = PhaseTimer.lap(listener, Phase.CODE_GENERATION, time);
+        if (interleaved) return compressInterleavedChunk(context, data, offset, length, time);
+        int bytesCount = writeCompressedData(context.bitWriter, context.codes, context.lengths, data, offset, length);
+        time = PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+        blockLength = 4 + getDictSize(context.lengths) + bytesCount;
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + (int) blockLength];
+
+        // Write the block header and the length of the chunk.
+        block[0] = HuffmanFormat.CHUNK;
+        HuffmanFormat.writeInt(block, 1, (int) blockLength);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+
+        // Write the dictionary and the compressed data.
+        int idx = writeDict(block, HuffmanFormat.BLOCK_HEADER_SIZE + 4, context.lengths);
+        System.arraycopy(context.bitWriter.buffer(), 0, block, idx, bytesCount);
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.DICTIONARY_WRITING, time);
+            listener.chunkCompressed(length, block.length, context.bitWriter.bitLength(), context.entropyBits());
+        }
+        return block;
     }
 
     /**
-     * This function takes a file output stream, a map of each hex string and its codeword, and a list of n bytes hex
-     * strings, and writes the compressed data to the file.
+     * This function takes an encoder context, a static dictionary, a chunk (a list of bytes with an offset and a
+     * length), its entropy in bits and the time the current phase started at, and returns the static chunk block,
+     * coded with the dictionary.
      * */
-    private void writeCompressedData(FileOutputStream fileOutputStream, Map<Byte, String> codes, byte[] nBytes)
-            throws IOException {
-        // Convert the actual characters to their corresponding codewords.
-        StringBuilder compressedData = new StringBuilder();
-        for (byte nByte : nBytes) compressedData.append(codes.get(nByte));
+    private byte[] compressStaticChunk(EncoderContext context, StaticDictionary dictionary, byte[] data, int offset,
+                                       int length, double entropyBits, long time) {
+        int bytesCount = writeCompressedData(context.bitWriter, dictionary.codes(), dictionary.codeLengths(), data,
+                offset, length);
+        int blockLength = 8 + bytesCount;
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + blockLength];
+        block[0] = HuffmanFormat.STATIC_CHUNK;
+        HuffmanFormat.writeInt(block, 1, blockLength);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE + 4, dictionary.id());
+        System.arraycopy(context.bitWriter.buffer(), 0, block, HuffmanFormat.BLOCK_HEADER_SIZE + 8, bytesCount);
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+            listener.chunkCompressed(length, block.length, context.bitWriter.bitLength(), entropyBits);
+        }
+        return block;
+    }
 
-        // Write the length of the compressed data.
-        int compressedDataLength = compressedData.length();
-        writeInt(fileOutputStream, Integer.toBinaryString(compressedDataLength));
+    /**
+     * This function takes a chunk (a list of bytes with an offset and a length), its entropy in bits and the time the
+     * current phase started at, and returns the stored chunk block, which holds the chunk as it is.
+     * */
+    private byte[] compressStoredChunk(byte[] data, int offset, int length, double entropyBits, long time) {
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + 4 + length];
+        block[0] = HuffmanFormat.STORED_CHUNK;
+        HuffmanFormat.writeInt(block, 1, 4 + length);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+        System.arraycopy(data, offset, block, HuffmanFormat.BLOCK_HEADER_SIZE + 4, length);
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+            listener.chunkCompressed(length, block.length, 8L * length, entropyBits);
+        }
+        return block;
+    }
 
-        // Add padding to make the length of the compressed data a multiple of 8.
-        int padding = 8 - compressedData.length() % 8;
+    /**
+     * This function takes the length of a chunk and the number of the identical earlier chunk, and returns the
+     * reference chunk block.
+     * */
+    byte[] compressReferenceChunk(int length, int reference) {
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + 8];
+        block[0] = HuffmanFormat.REF_CHUNK;
+        HuffmanFormat.writeInt(block, 1, 8);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE + 4, reference);
+        if (listener != null) listener.chunkRepeated(length, block.length);
+        return block;
+    }
 
-        // Add a padding of 0s to the compressed data.
-        compressedData.append("0".repeat(padding));
+    /**
+     * This function takes the byte value a whole chunk repeats, the length of the chunk and the time the current
+     * phase started at, and returns the run chunk block.
+     * */
+    private byte[] compressRunChunk(byte value, int length, long time) {
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + 5];
+        block[0] = HuffmanFormat.RUN_CHUNK;
+        HuffmanFormat.writeInt(block, 1, 5);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+        block[HuffmanFormat.BLOCK_HEADER_SIZE + 4] = value;
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+            listener.chunkRepeated(length, block.length);
+        }
+        return block;
+    }
 
-        // Loop over the compressed data and write each byte to the file.
-        byte[] bytes = new byte[compressedData.length() / 8];
-        for (int i = 0; i < compressedData.length(); i+= 8) {
-            String byteString = compressedData.substring(i, i + 8);
-            int byteValue = Integer.parseInt(byteString, 2);
-            bytes[i / 8] = (byte) byteValue;
+    /**
+     * This function takes an encoder context holding the codewords of a chunk, the chunk (a list of bytes with an
+     * offset and a length) and the time the current phase started at, and returns the compressed interleaved chunk
+     * block.
+     * */
+    private byte[] compressInterleavedChunk(EncoderContext context, byte[] data, int offset, int length, long time) {
+        CodecListener listener = this.listener;
+        BitWriter[] bitWriters = context.streamWriters();
+        int bytesCount = writeInterleavedCompressedData(bitWriters, context.codes, context.lengths, data, offset,
+                length);
+        time = PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+        int blockLength = 4 + getDictSize(context.lengths) + 4 * (HuffmanFormat.STREAMS - 1) + bytesCount;
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + blockLength];
+
+        // Write the block header, the length of the chunk and the dictionary.
+        block[0] = HuffmanFormat.INTERLEAVED_CHUNK;
+        HuffmanFormat.writeInt(block, 1, blockLength);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+        int idx = writeDict(block, HuffmanFormat.BLOCK_HEADER_SIZE + 4, context.lengths);
+
+        // Write the sizes of the sub-streams but the last, then the sub-streams.
+        for (int stream = 0; stream < HuffmanFormat.STREAMS - 1; stream++) {
+            HuffmanFormat.writeInt(block, idx, bitWriters[stream].size());
+            idx += 4;
+        }
+        long codeBits = 0;
+        for (BitWriter bitWriter : bitWriters) {
+            System.arraycopy(bitWriter.buffer(), 0, block, idx, bitWriter.size());
+            idx += bitWriter.size();
+            codeBits += bitWriter.bitLength();
+        }
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.DICTIONARY_WRITING, time);
+            listener.chunkCompressed(length, block.length, codeBits, context.entropyBits());
         }
+        return block;
+    }
 
-        // Write the number of bytes that the compressed data takes.
-        writeInt(fileOutputStream, Integer.toBinaryString(bytes.length));
+    /**
+     * This function takes an encoder context holding the code lengths of the context classes of a chunk, the chunk
+     * (a list of bytes with an offset and a length) and the time the current phase started at, and returns the
+     * compressed context chunk block.
+     * */
+    private byte[] compressContextChunk(EncoderContext context, byte[] data, int offset, int length, long time) {
+        CodecListener listener = this.listener;
+        context.assignContextCodes();
+        time = PhaseTimer.lap(listener, Phase.CODE_GENERATION, time);
+        int bytesCount = writeContextCompressedData(context.bitWriter, context, data, offset, length);
+        time = PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+        int blockLength = 4 + getContextDictSize(context) + bytesCount;
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + blockLength];
+
+        // Write the block header and the length of the chunk.
+        block[0] = HuffmanFormat.CONTEXT_CHUNK;
+        HuffmanFormat.writeInt(block, 1, blockLength);
+        HuffmanFormat.writeInt(block, HuffmanFormat.BLOCK_HEADER_SIZE, length);
+
+        // Write the mask of the used classes, their dictionaries and the compressed data.
+        int idx = HuffmanFormat.BLOCK_HEADER_SIZE + 4;
+        int maskIdx = idx++;
+        for (int contextClass = 0; contextClass < HuffmanFormat.CONTEXT_CLASSES; contextClass++) {
+            if (!isUsed(context.contextLengths[contextClass])) continue;
+            block[maskIdx] |= (byte) (1 << contextClass);
+            idx = writeDict(block, idx, context.contextLengths[contextClass]);
+        }
+        System.arraycopy(context.bitWriter.buffer(), 0, block, idx, bytesCount);
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.DICTIONARY_WRITING, time);
+            listener.chunkCompressed(length, block.length, context.bitWriter.bitLength(),
+                    context.contextEntropyBits());
+        }
+        return block;
+    }
 
-        // Write the compressed data to the file.
-        fileOutputStream.write(bytes);
-        fileOutputStream.flush();
+    /**
+     * This function takes an encoder context holding the n-gram code lengths of a chunk, the chunk (a list of bytes
+     * with an offset and a length), the symbol width and the time the current phase started at, and returns the
+     * compressed n-gram chunk block.
+     * */
+    private byte[] compressNgramChunk(EncoderContext context, byte[] data, int offset, int length, int width,
+                                      long time) {
+        CodecListener listener = this.listener;
+        context.assignNgramCodes();
+        context.buildNgramDictionary();
+        time = PhaseTimer.lap(listener, Phase.CODE_GENERATION, time);
+        int bytesCount = writeNgramCompressedData(context.bitWriter, context, data, offset, length, width);
+        time = PhaseTimer.lap(listener, Phase.BIT_PACKING, time);
+        int symbolsCount = context.ngramTable.size();
+        int tailLength = length % width;
+        int blockLength = 4 + getNgramDictSize(context) + tailLength + bytesCount;
+        byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE + blockLength];
+
+        // Write the block header, the length of the chunk, the width and the number of symbols.
+        block[0] = HuffmanFormat.NGRAM_CHUNK;
+        HuffmanFormat.writeInt(block, 1, blockLength);
+        int idx = HuffmanFormat.BLOCK_HEADER_SIZE;
+        HuffmanFormat.writeInt(block, idx, length);
+        block[idx + 4] = (byte) width;
+        HuffmanFormat.writeInt(block, idx + 5, symbolsCount);
+        idx += 9;
+
+        // Write the symbols as deltas, then their lengths, the raw tail and the compressed data.
+        long previous = 0;
+        for (int i = 0; i < symbolsCount; i++) {
+            idx = HuffmanFormat.writeVarLong(block, idx, context.ngramSymbols[i] - previous);
+            previous = context.ngramSymbols[i];
+        }
+        for (int i = 0; i < symbolsCount; i++) block[idx++] = (byte) context.ngramLengths[i];
+        System.arraycopy(data, offset + length - tailLength, block, idx, tailLength);
+        idx += tailLength;
+        System.arraycopy(context.bitWriter.buffer(), 0, block, idx, bytesCount);
+        if (listener != null) {
+            PhaseTimer.lap(listener, Phase.DICTIONARY_WRITING, time);
+            listener.chunkCompressed(length, block.length, context.bitWriter.bitLength(), context.ngramEntropyBits());
+        }
+        return block;
     }
 
     /**
-     * This function takes a file path, a map of each hex string and its codeword, and a list of n bytes hex strings,
-     * and writes the compressed file.
+     * The writer of the blocks of a compressed stream. The header is only written with the second chunk block or at
+     * the end of the input, and the first block is held back until then, so that an input that fits in one static
+     * chunk is written as a compact message, without the DEDUP, INDEX and END blocks
      * */
-    private void writeCompressedFile(FileOutputStream fileOutputStream, Map<Byte, String> codes, byte[] nBytes)
-            throws IOException {
-        // Write the number of entries in the dictionary.
-        writeInt(fileOutputStream, Integer.toBinaryString(codes.size()));
+    private final class BlockWriter {
+        private final OutputStream outputStream;
+        private final ChunkCache dedupCache;
+        // The index of the written chunk blocks, created with the header
+        private ChunkIndex index;
+        // The first chunk block while the header is not written
+        private byte[] firstBlock;
+
+        BlockWriter(OutputStream outputStream, ChunkCache dedupCache) {
+            this.outputStream = outputStream;
+            this.dedupCache = dedupCache;
+        }
 
-        // Write the dictionary.
-        writeDict(fileOutputStream, codes);
+        /**
+         * This function takes a compressed chunk block, writes it (or holds it back if it is the first one), and adds
+         * it to the index.
+         * */
+        void write(byte[] block) throws IOException {
+            if (index == null && firstBlock == null) {
+                firstBlock = block;
+                return;
+            }
+            if (index == null) writeHeader();
+            writeBlock(block);
+        }
 
-        // Write the compressed data and its length.
-        writeCompressedData(fileOutputStream, codes, nBytes);
+        /**
+         * Ends the stream: writes the compact message if the only chunk block is a static one, and the header, the
+         * block held back, the chunk index and the end block otherwise. Returns the size of the compressed stream
+         * */
+        long finish() throws IOException {
+            if (index == null && firstBlock != null && firstBlock[0] == HuffmanFormat.STATIC_CHUNK) {
+                outputStream.write(HuffmanFormat.MAGIC);
+                outputStream.write(HuffmanFormat.VERSION | HuffmanFormat.COMPACT);
+                index = new ChunkIndex(HuffmanFormat.HEADER_SIZE);
+                writeBlock(firstBlock);
+                return HuffmanFormat.HEADER_SIZE + firstBlock.length;
+            }
+            if (index == null) writeHeader();
+            index.write(outputStream);
+            return index.compressedSize();
+        }
+
+        /**
+         * Return the size of the original data
+         * */
+        long originalSize() {
+            return index.originalSize();
+        }
+
+        /**
+         * Writes the file header, and the size of the deduplication cache if any, followed by the block held back
+         * */
+        private void writeHeader() throws IOException {
+            index = new ChunkIndex(writeFileHeader(outputStream, dedupCache != null ? deduplication : 0));
+            if (firstBlock != null) writeBlock(firstBlock);
+            firstBlock = null;
+        }
+
+        private void writeBlock(byte[] block) throws IOException {
+            long time = PhaseTimer.start(listener);
+            outputStream.write(block);
+            PhaseTimer.lap(listener, Phase.IO, time);
+            index.add(block);
+        }
     }
 
     /**
-     * This function takes a file path and n, reads the file, compresses it, and writes the compressed file.
+     * The compression of one chunk of the input, run either inline or on the executor
      * */
-    public String compress(String filePath) throws IOException {
-        String fileName = filePath.substring(filePath.lastIndexOf("\\") + 1);
-        String compressedFilePath = filePath.substring(0, filePath.lastIndexOf("\\") + 1) + fileName + ".hc";
+    private interface ChunkTask {
+        byte[] compress() throws IOException;
+    }
+
+    /**
+     * A source of chunks that returns the task compressing the next chunk, or null at the end of the input
+     * */
+    private interface ChunkSource {
+        ChunkTask next() throws IOException;
+    }
 
-        FileInputStream fileInputStream = new FileInputStream(filePath);
-        FileOutputStream fileOutputStream = new FileOutputStream(compressedFilePath);
+    /**
+     * This function takes an output stream and the size of the deduplication cache of the stream (0 for none), writes
+     * the file header followed by the DEDUP block if any, and returns the offset of the first chunk block.
+     * */
+    static long writeFileHeader(OutputStream outputStream, int cachedChunks) throws IOException {
+        outputStream.write(HuffmanFormat.MAGIC);
+        outputStream.write(HuffmanFormat.VERSION);
+        if (cachedChunks == 0) return HuffmanFormat.HEADER_SIZE;
+        outputStream.write(HuffmanFormat.DEDUP);
+        HuffmanFormat.writeInt(outputStream, 4);
+        HuffmanFormat.writeInt(outputStream, cachedChunks);
+        return HuffmanFormat.HEADER_SIZE + HuffmanFormat.DEDUP_BLOCK_SIZE;
+    }
 
-        // Chunk size is 22680 bytes.
-        int chunkSize = 22680;
-        // Get the size of the file.
-        int fileSize = fileInputStream.available();
+    /**
+     * Return a new deduplication cache, or null without deduplication
+     * */
+    private ChunkCache newDedupCache() {
+        return deduplication > 0 ? new ChunkCache(deduplication) : null;
+    }
 
-        for (int i = 0; i < fileSize; i += chunkSize) {
-            int available = Math.min(chunkSize, fileSize - i);
-            // Read the file in chunks of size chunkSize.
-            byte[] data = fileInputStream.readNBytes(available);
+    /**
+     * This function takes the deduplication cache, the number of a chunk and the chunk, and returns the number of the
+     * identical cached chunk, or -1 after caching the chunk. The chunks must be deduplicated in order.
+     * */
+    static int deduplicate(ChunkCache dedupCache, int chunkNumber, ByteBuffer chunk) {
+        long fingerprint = ChunkCache.fingerprint(chunk);
+        int reference = dedupCache.find(chunk, fingerprint);
+        if (reference < 0) dedupCache.add(chunkNumber, chunk, fingerprint);
+        return reference;
+    }
 
-            // Get the frequencies of the n bytes hex strings.
-            Map<Byte, Integer> frequencies = getFrequenciesForNBytes(data);
+    /**
+     * Return the number of chunks compressed concurrently or queued for writing at most
+     * */
+    private int maxPending() {
+        return 2 * Math.max(parallelism, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This function takes a file path, compresses the file next to it (with the .hc extension), and returns the
+     * compressed file path. The file is read through memory-mapped windows, so files larger than 2 GB are supported.
+     * */
+    public String compress(String filePath) throws IOException {
+        String compressedFilePath = filePath + ".hc";
+        if (pipelined) {
+            try (InputStream inputStream = new FileInputStream(filePath);
+                 OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(compressedFilePath))) {
+                compress(inputStream, outputStream);
+            }
+            return compressedFilePath;
+        }
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(compressedFilePath))) {
+            compress(fileChannel, outputStream);
+        }
+        return compressedFilePath;
+    }
 
-            // Get the root of the Huffman tree.
-            Node root = huffmanCoding(frequencies);
+    /**
+     * This function takes a file channel and an output stream, and writes the compressed data of the whole file. The
+     * file is mapped up to MAPPED_WINDOW_CHUNKS chunks at a time and every chunk is copied straight from its window
+     * into a per-thread buffer, so nothing but the windows and the chunks in flight is held in memory.
+     * */
+    public void compress(FileChannel fileChannel, OutputStream outputStream) throws IOException {
+        long fileSize = fileChannel.size();
+        int chunkSize = this.chunkSize;
+        long windowSize = (long) Math.min(MAPPED_WINDOW_CHUNKS, Integer.MAX_VALUE / chunkSize) * chunkSize;
+        ChunkCache dedupCache = newDedupCache();
+        compressChunks(new ChunkSource() {
+            private MappedByteBuffer window;
+            private long windowStart;
+            private long position;
+            private int chunkNumber;
+
+            @Override
+            public ChunkTask next() throws IOException {
+                if (position >= fileSize) return null;
+                if (window == null || position >= windowStart + window.capacity()) {
+                    windowStart = position;
+                    window = fileChannel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(windowSize, fileSize - windowStart));
+                }
+                ByteBuffer source = window;
+                int offset = (int) (position - windowStart);
+                int length = (int) Math.min(chunkSize, fileSize - position);
+                position += length;
+                if (dedupCache != null) {
+                    int reference = deduplicate(dedupCache, chunkNumber++, source.slice(offset, length));
+                    if (reference >= 0) return () -> compressReferenceChunk(length, reference);
+                }
+                return () -> {
+                    byte[] data = encoderContexts.get().chunkBuffer(length);
+                    long time = PhaseTimer.start(listener);
+                    source.get(offset, data, 0, length);
+                    PhaseTimer.lap(listener, Phase.IO, time);
+                    return compressChunk(data, 0, length);
+                };
+            }
+        }, outputStream, dedupCache);
+    }
 
-            // Get the codewords of the n bytes hex strings.
-            Map<Byte, String> codes = new HashMap<>();
-            getCodes(root, "", codes);
+    /**
+     * This function takes an input stream and an output stream, reads the input until its end, and writes the
+     * compressed data. Neither stream is closed. Only the chunks being compressed are kept in memory, and a sequential
+     * compression reuses the chunk buffer of the thread, so concurrent calls on one instance allocate no chunk buffers.
+     * */
+    public void compress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        int chunkSize = this.chunkSize;
+        ChunkCache dedupCache = newDedupCache();
+        int[] chunkNumber = {0};
+        if (pipelined) {
+            // Read every chunk into a pooled buffer, released once the chunk is compressed.
+            BufferPool buffers = new BufferPool(maxPending() + 2);
+            compressChunks(() -> {
+                byte[] data = buffers.take(chunkSize);
+                long time = PhaseTimer.start(listener);
+                int length = inputStream.readNBytes(data, 0, chunkSize);
+                PhaseTimer.lap(listener, Phase.IO, time);
+                int reference = length == 0 || dedupCache == null ? -1
+                        : deduplicate(dedupCache, chunkNumber[0]++, ByteBuffer.wrap(data, 0, length));
+                if (length == 0 || reference >= 0) {
+                    buffers.release(data);
+                    return length == 0 ? null : () -> compressReferenceChunk(length, reference);
+                }
+                return () -> {
+                    try {
+                        return compressChunk(data, 0, length);
+                    } finally {
+                        buffers.release(data);
+                    }
+                };
+            }, outputStream, dedupCache);
+            return;
+        }
+        if (executor == null && parallelism == 1) {
+            // Every chunk is compressed before the next one is read, so it is read into the buffer of the thread.
+            compressChunks(() -> {
+                byte[] data = encoderContexts.get().chunkBuffer(chunkSize);
+                long time = PhaseTimer.start(listener);
+                int length = inputStream.readNBytes(data, 0, chunkSize);
+                PhaseTimer.lap(listener, Phase.IO, time);
+                if (length == 0) return null;
+                int reference = dedupCache == null ? -1
+                        : deduplicate(dedupCache, chunkNumber[0]++, ByteBuffer.wrap(data, 0, length));
+                if (reference >= 0) return () -> compressReferenceChunk(length, reference);
+                return () -> compressChunk(data, 0, length);
+            }, outputStream, dedupCache);
+            return;
+        }
+        compressChunks(() -> {
+            long time = PhaseTimer.start(listener);
+            byte[] data = inputStream.readNBytes(chunkSize);
+            PhaseTimer.lap(listener, Phase.IO, time);
+            if (data.length == 0) return null;
+            int reference = dedupCache == null ? -1 : deduplicate(dedupCache, chunkNumber[0]++, ByteBuffer.wrap(data));
+            if (reference >= 0) return () -> compressReferenceChunk(data.length, reference);
+            return () -> compressChunk(data, 0, data.length);
+        }, outputStream, dedupCache);
+    }
 
-            // Write the compressed file.
-            writeCompressedFile(fileOutputStream, codes, data);
+    /**
+     * This function takes a source of chunks, an output stream and the deduplication cache of the source (or null),
+     * and writes the header, the compressed chunks in their original order, and the chunk index. The chunks are
+     * compressed inline, or concurrently when an executor or a parallelism is given; at most two chunks per worker are
+     * then in flight, so memory stays bounded, and the output is byte-identical to the sequential path. In a pipeline,
+     * the chunk source is called from a reader thread and the chunks are compressed by a single thread unless an
+     * executor or a parallelism is given.
+     * */
+    private void compressChunks(ChunkSource chunkSource, OutputStream outputStream, ChunkCache dedupCache)
+            throws IOException {
+        long startTime = PhaseTimer.start(listener);
+        BlockWriter blockWriter = new BlockWriter(outputStream, dedupCache);
+
+        ExecutorService executor = this.executor;
+        if (executor == null && parallelism > 1) executor = new ForkJoinPool(parallelism);
+        ChunkTask chunkTask;
+        if (pipelined) {
+            ExecutorService coders = executor != null ? executor : Executors.newSingleThreadExecutor();
+            try {
+                Pipeline.run(() -> {
+                    ChunkTask task = chunkSource.next();
+                    return task == null ? null : task::compress;
+                }, coders, maxPending(), blockWriter::write, "compression");
+            } finally {
+                if (coders != this.executor) coders.shutdown();
+            }
+        } else if (executor == null) {
+            while ((chunkTask = chunkSource.next()) != null) blockWriter.write(chunkTask.compress());
+        } else {
+            int maxPending = maxPending();
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            try {
+                while ((chunkTask = chunkSource.next()) != null) {
+                    pending.add(executor.submit(chunkTask::compress));
+                    if (pending.size() >= maxPending) blockWriter.write(pending.poll().get());
+                }
+                while (!pending.isEmpty()) blockWriter.write(pending.poll().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compression was interrupted.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException("Failed to compress a chunk.", e.getCause());
+            } finally {
+                for (Future<byte[]> future : pending) future.cancel(true);
+                if (executor != this.executor) executor.shutdown();
+            }
         }
-        fileInputStream.close();
-        fileOutputStream.close();
 
-        return compressedFilePath;
+        // Write the chunk index and the end block.
+        long time = PhaseTimer.start(listener);
+        long compressedSize = blockWriter.finish();
+        outputStream.flush();
+        if (listener != null) {
+            long endTime = PhaseTimer.lap(listener, Phase.IO, time);
+            listener.completed(blockWriter.originalSize(), compressedSize, endTime - startTime);
+        }
     }
-}
\ No newline at end of file
+}
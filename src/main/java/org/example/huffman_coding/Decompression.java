@@ -1,151 +1,390 @@
 package org.example.huffman_coding;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Decompression {
-    private int startIdx = 0;
+    // The number of chunks decompressed concurrently when no executor is given (1 decompresses sequentially)
+    private final int parallelism;
+    // An executor supplied by the caller, or null to use a pool of parallelism threads
+    private final ExecutorService executor;
+    // The number of compressed bytes mapped at once when decompressing a file in parallel
+    private static final int MAPPED_WINDOW_SIZE = 64 << 20;
+    // The listener of the metrics, or null
+    private CodecListener listener;
+    // The registry of the static dictionaries
+    private DictionaryRegistry dictionaries = DictionaryRegistry.shared();
+    // Whether reading, decompressing and writing the streams run in separate threads
+    private boolean pipelined;
+    // The decoding state of each thread
+    private final ThreadLocal<ChunkDecoder> chunkDecoders = ThreadLocal.withInitial(ChunkDecoder::new);
 
-    public Decompression() {}
+    public Decompression() {
+        this(1);
+    }
 
-    private int[] readNBytes(byte[] data) {
-        int[] bytes = new int[4];
-        for (int i = 0; i < 4; i++) {
-            bytes[i] = data[startIdx++];
-            if (bytes[i] < 0) bytes[i] += 256;
-        }
-        return bytes;
+    public Decompression(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("The parallelism must be at least 1.");
+        this.parallelism = parallelism;
+        this.executor = null;
+    }
+
+    public Decompression(ExecutorService executor) {
+        this.parallelism = 1;
+        this.executor = executor;
     }
 
     /**
-     * This function takes a list of bytes and returns a string of bits representing the integer.
+     * This function takes a listener that receives the timing of every phase and the size of every chunk (null
+     * disables the metrics, which is the default).
      * */
-    private String readInt(int[] bytes) {
-        StringBuilder binaryString = new StringBuilder();
-        for (int i = 0; i < 4; i++) {
-            String bitsString = Integer.toBinaryString(bytes[i]);
-            bitsString = "0".repeat(8 - bitsString.length()) + bitsString;
-            binaryString.append(bitsString);
-        }
-        return binaryString.toString();
+    public void setListener(CodecListener listener) {
+        this.listener = listener;
+    }
+
+    public CodecListener getListener() {
+        return listener;
     }
 
     /**
-     * This function takes a list of bytes, a dictionary size, n, and remaining, and returns a dictionary (data to
-     * codes).
+     * This function takes the registry of the static dictionaries the data may have been compressed with (the shared
+     * registry by default).
      * */
-    private Map<String, String> extractOppositeDict(byte[] data, int dictSize) {
-        Map<String, String> codes = new HashMap<>();
-        for (int entryIdx = 0; entryIdx < dictSize; entryIdx++) {
-            StringBuilder entryKey = new StringBuilder();
-            char c = (char) data[startIdx++];
-            while (c != ':') {
-                entryKey.append(c);
-                c = (char) data[startIdx++];
-            }
-
-            int codeLength = data[startIdx++];
-            int[] codeBytes = readNBytes(data);
+    public void setDictionaries(DictionaryRegistry dictionaries) {
+        this.dictionaries = dictionaries;
+    }
 
-            String s = readInt(codeBytes);
-            int binaryStringStartIdx = s.length() - codeLength;
-            String binaryString = s.substring(binaryStringStartIdx);
-            codes.put(binaryString, entryKey.toString());
-        }
-        return codes;
+    public DictionaryRegistry getDictionaries() {
+        return dictionaries;
     }
 
     /**
-     * This function takes a list of bytes, a start index, and a length and returns a string of bits representing the
-     * compressed data.
+     * This function takes whether to decompress streams in a pipeline (off by default): a reader thread reads the
+     * chunk blocks into pooled buffers while the blocks read before are decoded and written, so the latency of slow
+     * storage overlaps with the decoding. It applies to decompress(InputStream, OutputStream), which decompress(String)
+     * uses unless it decompresses in parallel.
      * */
-    private StringBuilder extractCompressedData(byte[] data, int bytesCount) {
-        StringBuilder compressedData = new StringBuilder();
-
-        int i = 0;
-        while (i++ < bytesCount) {
-            byte b = data[startIdx++];
-            int a = b;
-            if (b < 0) a += 256;
-            String byteString = Integer.toBinaryString(a);
-            byteString = "0".repeat(8 - byteString.length()) + byteString;
-            compressedData.append(byteString);
-        }
-        return compressedData;
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
     }
 
     /**
-     * This function takes a decompressed file path, a dictionary, compressed data, and its length, and writes the
-     * decompressed file.
+     * This function takes an executor and the channels of the compressed and the decompressed files, locates the
+     * chunks through the chunk index, decodes them concurrently, and writes each one at its offset in the
+     * decompressed file. The compressed file is mapped in windows of whole chunk blocks, and all offsets are longs,
+     * so files larger than 2 GB are supported.
      * */
-    private void writeDecompressedFile(FileOutputStream fileOutputStream, Map<String, String> dict,
-                                       StringBuilder compressedData, int len) throws IOException {
-
-        StringBuilder current = new StringBuilder();
-        for (int i = 0; i < len; i++) {
-            current.append(compressedData.charAt(i));
-            if (dict.containsKey(current.toString())) {
-                String[] byteStrings = dict.get(current.toString()).split(" ");
-                for (String byteString : byteStrings)  {
-                     fileOutputStream.write(Integer.parseInt(byteString));
-                     fileOutputStream.flush();
+    private void decompressInParallel(ExecutorService executor, FileChannel inputChannel, FileChannel outputChannel)
+            throws IOException {
+        CodecListener listener = this.listener;
+        DictionaryRegistry dictionaries = this.dictionaries;
+        long startTime = PhaseTimer.start(listener);
+        byte[] header = new byte[HuffmanFormat.HEADER_SIZE];
+        inputChannel.read(ByteBuffer.wrap(header), 0);
+        HuffmanFormat.checkHeader(header);
+        ChunkIndex index = ChunkIndex.read(inputChannel);
+
+        int maxPending = 2 * Math.max(parallelism, Runtime.getRuntime().availableProcessors());
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        MappedByteBuffer window = null;
+        long windowStart = 0;
+        long windowEnd = 0;
+        try {
+            for (int chunk = 0; chunk < index.size(); chunk++) {
+                long blockOffset = index.blockOffset(chunk);
+                int blockSize = index.blockSize(chunk);
+                if (blockOffset + blockSize > windowEnd) {
+                    // Map the next run of whole chunk blocks.
+                    windowStart = blockOffset;
+                    windowEnd = Math.min(index.blockOffset(index.size()),
+                            blockOffset + Math.max(MAPPED_WINDOW_SIZE, blockSize));
+                    window = inputChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
                 }
-                current = new StringBuilder();
+
+                ByteBuffer source = window;
+                int position = (int) (blockOffset - windowStart);
+                long chunkOffset = index.chunkOffset(chunk);
+                int chunkNumber = chunk;
+                pending.add(executor.submit(() -> {
+                    ChunkDecoder chunkDecoder = chunkDecoders.get();
+                    chunkDecoder.listener = listener;
+                    chunkDecoder.dictionaries = dictionaries;
+                    byte[] block = chunkDecoder.blockBuffer(blockSize);
+                    long time = PhaseTimer.start(listener);
+                    source.get(position, block, 0, blockSize);
+                    ChunkIndex.checkBlock(block, blockSize);
+                    if (block[0] == HuffmanFormat.REF_CHUNK) {
+                        // Decode the earlier chunk a repeated chunk refers to again.
+                        int reference = ChunkDecoder.referencedChunk(block, 0, chunkNumber);
+                        block = ChunkIndex.readFully(inputChannel, index.blockOffset(reference),
+                                index.blockSize(reference));
+                        if (block[0] == HuffmanFormat.REF_CHUNK) throw new IOException("Corrupted chunk reference.");
+                    }
+                    PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                    int chunkLength = chunkDecoder.decompressChunk(block, 0);
+                    if (chunkLength != index.chunkLength(chunkNumber)) throw new IOException("Corrupted chunk index.");
+
+                    time = PhaseTimer.start(listener);
+                    ByteBuffer buffer = ByteBuffer.wrap(chunkDecoder.output, 0, chunkLength);
+                    long outputPosition = chunkOffset;
+                    while (buffer.hasRemaining()) outputPosition += outputChannel.write(buffer, outputPosition);
+                    PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                    return null;
+                }));
+                if (pending.size() >= maxPending) pending.poll().get();
             }
+            while (!pending.isEmpty()) pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decompression was interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Failed to decompress a chunk.", e.getCause());
+        } finally {
+            for (Future<?> future : pending) future.cancel(true);
         }
+        outputChannel.truncate(index.originalSize());
+        if (listener != null)
+            listener.completed(inputChannel.size(), index.originalSize(), System.nanoTime() - startTime);
     }
 
     /**
-     * This function takes a compressed file path and a decompressed file path, reads the compressed file, decompresses
-     * it, and writes the decompressed file.
+     * This function takes a compressed file path, decompresses it next to it (as extracted.<name> without the .hc
+     * extension), and returns the decompressed file path (null for a file without the .hc extension).
      * */
-    private void decompressFile(byte[] data, FileOutputStream fileOutputStream) throws IOException {
-
-        // Extract the dictionary size, n, and remaining.
-        int[] dictSizeList = readNBytes(data);
-        int dictSize = Integer.parseInt(readInt(dictSizeList), 2);
-
-        // Extract the opposite dictionary (codes to data).
-        Map<String, String> codesToData = extractOppositeDict(data, dictSize);
+    public String decompress(String compressedFilePath) throws IOException {
+        Path compressedPath = Paths.get(compressedFilePath);
+        String fileName = compressedPath.getFileName().toString();
+        if (!fileName.endsWith(".hc")) {
+            System.out.println("Invalid file extension.");
+            return null;
+        }
+        Path decompressedPath = compressedPath.resolveSibling(
+                "extracted." + fileName.substring(0, fileName.length() - ".hc".length()));
 
-        // Extract the length of the compressed data.
-        int[] compressedDataLengthList = readNBytes(data);
-        int compressedDataLength = Integer.parseInt(readInt(compressedDataLengthList), 2);
+        ExecutorService executor = this.executor;
+        if (executor == null && parallelism > 1) executor = new ForkJoinPool(parallelism);
+        if (executor == null) {
+            // Decompress the file chunk by chunk.
+            try (InputStream inputStream = new BufferedInputStream(new FileInputStream(compressedFilePath));
+                 OutputStream outputStream = new BufferedOutputStream(
+                         new FileOutputStream(decompressedPath.toFile()))) {
+                decompress(inputStream, outputStream);
+            }
+            return decompressedPath.toString();
+        }
 
-        // Extract the number of bytes that the compressed data takes.
-        int[] compressedDataBytesCountList = readNBytes(data);
-        int compressedDataBytesCount = Integer.parseInt(readInt(compressedDataBytesCountList), 2);
+        try (FileChannel inputChannel = FileChannel.open(compressedPath, StandardOpenOption.READ);
+             FileChannel outputChannel = FileChannel.open(decompressedPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE)) {
+            decompressInParallel(executor, inputChannel, outputChannel);
+        } finally {
+            if (executor != this.executor) executor.shutdown();
+        }
+        return decompressedPath.toString();
+    }
 
-        // Extract the compressed data.
-        StringBuilder compressedData = extractCompressedData(data, compressedDataBytesCount);
+    /**
+     * This function takes a compressed file path, an offset in the original file and a length, and returns the bytes
+     * of the original file in that range, decoding only the chunks that cover it. To read many ranges of the same
+     * file, keep a RandomAccessReader open instead, which caches the decoded chunks between reads.
+     * */
+    public byte[] read(Path compressedPath, long offset, int length) throws IOException {
+        try (RandomAccessReader reader = new RandomAccessReader(compressedPath)) {
+            reader.setListener(listener);
+            reader.setDictionaries(dictionaries);
+            return reader.read(offset, length);
+        }
+    }
 
-        // Write the decompressed file.
-        writeDecompressedFile(fileOutputStream, codesToData, compressedData, compressedDataLength);
+    /**
+     * This function takes an input stream of compressed data and an output stream, and writes the decompressed data
+     * chunk by chunk. Neither stream is closed. Without a pipeline the chunks are decoded by the decoder of the thread,
+     * so concurrent calls on one instance allocate no decoding buffers.
+     * */
+    public void decompress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        CodecListener listener = this.listener;
+        if (pipelined) {
+            decompressPipelined(inputStream, outputStream);
+        } else if (listener == null) {
+            new HuffmanInputStream(inputStream, null, dictionaries, chunkDecoders.get()).transferTo(outputStream);
+        } else {
+            HuffmanInputStream huffmanInputStream =
+                    new HuffmanInputStream(inputStream, listener, dictionaries, chunkDecoders.get());
+            byte[] buffer = new byte[Compression.CHUNK_SIZE];
+            int read;
+            while ((read = huffmanInputStream.read(buffer, 0, buffer.length)) >= 0) {
+                long time = System.nanoTime();
+                outputStream.write(buffer, 0, read);
+                PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+            }
+        }
+        outputStream.flush();
     }
 
     /**
-     * This function takes a compressed file path, decompresses it, and writes the decompressed file.
+     * This function takes an input stream of compressed data and an output stream, and decompresses the stream in a
+     * pipeline: a reader thread reads the chunk blocks into pooled buffers up to the end block, the blocks are decoded
+     * by the executor (or a single thread) into pooled buffers, and the calling thread writes them in order.
      * */
-    public void decompress(String compressedFilePath) throws IOException {
-        String fileName = compressedFilePath.substring(compressedFilePath.lastIndexOf("\\") + 1);
-        if (!fileName.endsWith(".hc")) {
-            System.out.println("Invalid file extension.");
-            return;
+    private void decompressPipelined(InputStream inputStream, OutputStream outputStream) throws IOException {
+        CodecListener listener = this.listener;
+        DictionaryRegistry dictionaries = this.dictionaries;
+        long startTime = PhaseTimer.start(listener);
+        byte[] fileHeader = inputStream.readNBytes(HuffmanFormat.HEADER_SIZE);
+        HuffmanFormat.checkHeader(fileHeader);
+        boolean compact = HuffmanFormat.isCompact(fileHeader);
+
+        int maxPending = 2 * Math.max(parallelism, Runtime.getRuntime().availableProcessors());
+        BufferPool blocks = new BufferPool(maxPending + 2);
+        BufferPool chunks = new BufferPool(maxPending + 2);
+        long[] compressedBytes = {HuffmanFormat.HEADER_SIZE};
+        long[] decompressedBytes = {0};
+        ExecutorService executor = this.executor;
+        if (executor == null)
+            executor = parallelism > 1 ? new ForkJoinPool(parallelism) : Executors.newSingleThreadExecutor();
+        byte[] header = new byte[HuffmanFormat.BLOCK_HEADER_SIZE];
+        // The deduplication cache (set by the reader before the first chunk, kept by the writer), and the chunks read
+        ChunkCache[] dedupCache = {null};
+        int[] chunkNumber = {0};
+        try {
+            Pipeline.run(() -> {
+                while (true) {
+                    // A compact message ends with its single chunk block.
+                    if (compact && chunkNumber[0] > 0) return null;
+                    long time = PhaseTimer.start(listener);
+                    if (inputStream.readNBytes(header, 0, header.length) != header.length)
+                        throw new EOFException("Unexpected end of the compressed stream.");
+                    int blockType = header[0];
+                    int blockLength = HuffmanFormat.readInt(header, 1);
+                    HuffmanFormat.checkBlockLength(blockType, blockLength);
+                    if (compact) HuffmanFormat.checkCompactBlock(blockType);
+                    compressedBytes[0] += HuffmanFormat.BLOCK_HEADER_SIZE + blockLength;
+
+                    if (blockType == HuffmanFormat.REF_CHUNK) {
+                        // The writer copies the chunk a repeated chunk refers to from the cache.
+                        if (dedupCache[0] == null || blockLength != 8)
+                            throw new IOException("Corrupted chunk reference.");
+                        byte[] block = readBlock(inputStream, header, new byte[header.length + blockLength]);
+                        int reference = ChunkDecoder.referencedChunk(block, 0, chunkNumber[0]++);
+                        int chunkLength = HuffmanFormat.readInt(block, header.length);
+                        PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                        return () -> new DecodedChunk(null, chunkLength, reference);
+                    } else if (HuffmanFormat.isChunk(blockType)) {
+                        byte[] block = blocks.take(HuffmanFormat.BLOCK_HEADER_SIZE + blockLength);
+                        try {
+                            readBlock(inputStream, header, block);
+                        } catch (IOException e) {
+                            blocks.release(block);
+                            throw e;
+                        }
+                        chunkNumber[0]++;
+                        PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                        return () -> {
+                            try {
+                                ChunkDecoder chunkDecoder = chunkDecoders.get();
+                                chunkDecoder.listener = listener;
+                                chunkDecoder.dictionaries = dictionaries;
+                                int chunkLength = chunkDecoder.decompressChunk(block, 0);
+                                byte[] chunk = chunks.take(chunkLength);
+                                System.arraycopy(chunkDecoder.output, 0, chunk, 0, chunkLength);
+                                return new DecodedChunk(chunk, chunkLength, -1);
+                            } finally {
+                                blocks.release(block);
+                            }
+                        };
+                    } else if (blockType == HuffmanFormat.DEDUP) {
+                        if (blockLength != 4 || dedupCache[0] != null || chunkNumber[0] > 0)
+                            throw new IOException("Corrupted deduplication block.");
+                        byte[] block = readBlock(inputStream, header, new byte[HuffmanFormat.DEDUP_BLOCK_SIZE]);
+                        dedupCache[0] = new ChunkCache(ChunkDecoder.dedupCacheSize(block, 0));
+                        PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                    } else if (blockType == HuffmanFormat.INDEX || blockType == HuffmanFormat.END) {
+                        inputStream.skipNBytes(blockLength);
+                        PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                        if (blockType == HuffmanFormat.END) return null;
+                    } else {
+                        throw new IOException("Unknown block type " + blockType + ".");
+                    }
+                }
+            }, executor, maxPending, new Pipeline.Writer<>() {
+                // The number of the next chunk to write
+                private int chunkNumber;
+
+                @Override
+                public void write(DecodedChunk chunk) throws IOException {
+                    // Resolve the references and cache the chunks in order, like the compressor did.
+                    byte[] data = chunk.data;
+                    if (chunk.reference >= 0) {
+                        data = dedupCache[0].get(chunk.reference);
+                        if (data.length != chunk.length) throw new IOException("Corrupted chunk reference.");
+                    } else if (dedupCache[0] != null) {
+                        dedupCache[0].add(chunkNumber, data, chunk.length);
+                    }
+                    chunkNumber++;
+                    long time = PhaseTimer.start(listener);
+                    outputStream.write(data, 0, chunk.length);
+                    PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                    decompressedBytes[0] += chunk.length;
+                    if (chunk.reference < 0) chunks.release(data);
+                }
+            }, "decompression");
+        } finally {
+            if (executor != this.executor) executor.shutdown();
         }
-        String decompressedFilePath = compressedFilePath.replace(fileName, "extracted." +
-                fileName.substring(0, fileName.lastIndexOf(".")));
+        if (listener != null)
+            listener.completed(compressedBytes[0], decompressedBytes[0], System.nanoTime() - startTime);
+    }
 
-        // Decompress the file.
-        FileInputStream fileInputStream = new FileInputStream(compressedFilePath);
-        FileOutputStream fileOutputStream = new FileOutputStream(decompressedFilePath);
+    /**
+     * This function takes the compressed stream, a block header that was read from it, and a buffer for the whole
+     * block, reads the block body after the header, and returns the buffer.
+     * */
+    private static byte[] readBlock(InputStream inputStream, byte[] header, byte[] block) throws IOException {
+        int blockLength = HuffmanFormat.readInt(header, 1);
+        System.arraycopy(header, 0, block, 0, header.length);
+        if (inputStream.readNBytes(block, header.length, blockLength) != blockLength)
+            throw new EOFException("Unexpected end of the compressed stream.");
+        return block;
+    }
 
-        byte[] data = fileInputStream.readAllBytes();
-        while (startIdx < data.length) decompressFile(data, fileOutputStream);
+    /**
+     * A chunk decoded by the pipeline: its pooled bytes and length, or the length and the number of the earlier chunk
+     * it repeats
+     * */
+    private static final class DecodedChunk {
+        final byte[] data;
+        final int length;
+        final int reference;
 
-        fileInputStream.close();
-        fileOutputStream.close();
+        DecodedChunk(byte[] data, int length, int reference) {
+            this.data = data;
+            this.length = length;
+            this.reference = reference;
+        }
     }
 }
@@ -0,0 +1,72 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The static dictionaries known to the decoders, by id. A dictionary is loaded at most once, from the registered
+ * ones or from the dictionary directory of the registry, and then served from memory, so that decoding a small
+ * payload costs no setup. A registry can be shared by any number of threads.
+ * */
+public class DictionaryRegistry {
+    private static final DictionaryRegistry SHARED = new DictionaryRegistry();
+
+    // The directory holding the dictionary files (named by fileName), or null to only use the registered ones
+    private final Path directory;
+    private final Map<Integer, StaticDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    public DictionaryRegistry() {
+        this(null);
+    }
+
+    public DictionaryRegistry(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Return the registry used by the decoders that are not given one
+     * */
+    public static DictionaryRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * This function takes a dictionary id and returns the name of its file in a dictionary directory.
+     * */
+    public static String fileName(int id) {
+        return "dictionary-" + id + ".hcd";
+    }
+
+    /**
+     * This function takes a dictionary and registers it under its id. Registering another dictionary under the same
+     * id is an error, since the chunks coded with either could no longer be told apart.
+     * */
+    public void register(StaticDictionary dictionary) {
+        StaticDictionary registered = dictionaries.putIfAbsent(dictionary.id(), dictionary);
+        if (registered != null && !registered.equals(dictionary))
+            throw new IllegalArgumentException("Another dictionary is registered with id " + dictionary.id() + ".");
+    }
+
+    /**
+     * This function takes a dictionary id and returns the dictionary, loading it from the dictionary directory the
+     * first time.
+     * */
+    public StaticDictionary get(int id) throws IOException {
+        StaticDictionary dictionary = dictionaries.get(id);
+        if (dictionary != null) return dictionary;
+        if (directory == null) throw new IOException("Unknown dictionary " + id + ".");
+
+        Path path = directory.resolve(fileName(id));
+        if (!Files.isRegularFile(path)) throw new NoSuchFileException(path.toString(), null, "Unknown dictionary.");
+        dictionary = StaticDictionary.load(path);
+        if (dictionary.id() != id) throw new IOException("The file " + path + " holds dictionary " + dictionary.id()
+                + ".");
+        // Concurrent first loads all end up with the same instance.
+        StaticDictionary registered = dictionaries.putIfAbsent(id, dictionary);
+        return registered != null ? registered : dictionary;
+    }
+}
@@ -0,0 +1,289 @@
+package org.example.huffman_coding;
+
+import org.example.huffman_coding.Hashing.NSpaceHash;
+import org.example.huffman_coding.Hashing.OpenAddressingHash;
+
+import java.util.Arrays;
+
+/**
+ * The scratch state of one encoding thread: the histogram, code lengths and codewords of the current chunk, the work
+ * arrays used to build them, and the bit writer of the payload. Everything is allocated once and reused for every
+ * chunk, so building the model of a chunk allocates nothing.
+ * */
+class EncoderContext {
+    // The frequency of each byte value in the current chunk, and the histogram it is counted in
+    final int[] frequencies = new int[256];
+    private final Histogram histogram = new Histogram();
+    // The codeword length of each byte value (0 if unused) and its canonical codeword
+    final int[] lengths = new int[256];
+    final int[] codes = new int[256];
+    // The packed codewords of the current chunk
+    final BitWriter bitWriter = new BitWriter(Compression.CHUNK_SIZE + 8);
+    // The packed codewords of the sub-streams of an interleaved chunk, allocated on the first interleaved chunk
+    private BitWriter[] streamWriters;
+    // A chunk-sized buffer to copy the input into when it is not already in an array
+    private byte[] chunk = new byte[Compression.CHUNK_SIZE];
+
+    // The used symbols sorted by frequency, as (frequency << 8) | symbol
+    private final long[] sortedSymbols = new long[256];
+    // The in-place tree of Moffat and Katajainen: weights, then parent pointers, then depths
+    private final int[] tree = new int[256];
+    // Per codeword length, the next canonical codeword
+    private final int[] nextCode = new int[HuffmanFormat.MAX_CODE_LENGTH + 1];
+
+    // The order-1 code of the current chunk, allocated on the first context chunk: per context class of the previous
+    // byte, the frequency, codeword length and canonical codeword of each byte value
+    int[][] contextFrequencies;
+    int[][] contextLengths;
+    int[][] contextCodes;
+
+    // The n-gram code of the current chunk, allocated on the first n-gram chunk and grown with the alphabet: the
+    // symbol counts, and per index the symbol, its frequency, codeword length and canonical codeword
+    OpenAddressingHash ngramTable;
+    long[] ngramSymbols = new long[0];
+    int[] ngramFrequencies = new int[0];
+    int[] ngramLengths = new int[0];
+    int[] ngramCodes = new int[0];
+    // The work arrays of the n-gram code: the symbols sorted by frequency, the in-place tree and the next codewords
+    private long[] ngramSorted = new long[0];
+    private int[] ngramTree = new int[0];
+    private int[] ngramNextCode;
+    // The static dictionary of the n-gram code once it is built: a perfect hash of the symbols, and per slot the
+    // codeword of the symbol stored there, as (code << 5) | length
+    NSpaceHash ngramDictionary;
+    int[] ngramSlotCodewords = new int[0];
+
+    /**
+     * This function takes a chunk size and returns a reusable buffer that can hold the chunk.
+     * */
+    byte[] chunkBuffer(int chunkSize) {
+        if (chunk.length < chunkSize) chunk = new byte[chunkSize];
+        return chunk;
+    }
+
+    /**
+     * Return the bit writers of the sub-streams of an interleaved chunk
+     * */
+    BitWriter[] streamWriters() {
+        if (streamWriters == null) {
+            streamWriters = new BitWriter[HuffmanFormat.STREAMS];
+            for (int stream = 0; stream < streamWriters.length; stream++)
+                streamWriters[stream] = new BitWriter(Compression.CHUNK_SIZE / streamWriters.length + 8);
+        }
+        return streamWriters;
+    }
+
+    /**
+     * This function takes a list of bytes with an offset and a length, and fills the frequency of each byte value.
+     * */
+    void countFrequencies(byte[] data, int offset, int length) {
+        histogram.reset();
+        histogram.add(data, offset, length);
+        histogram.frequencies(frequencies);
+    }
+
+    /**
+     * This function fills the codeword length of each byte value from the frequencies, limited to MAX_CODE_LENGTH.
+     * */
+    void buildLengths() {
+        buildLengths(frequencies, lengths);
+    }
+
+    /**
+     * This function takes the frequency of each byte value and fills its codeword length, limited to MAX_CODE_LENGTH.
+     * */
+    private void buildLengths(int[] frequencies, int[] lengths) {
+        if (buildCodeLengths(frequencies, lengths) > HuffmanFormat.MAX_CODE_LENGTH)
+            CanonicalCode.limitLengths(frequencies, lengths, HuffmanFormat.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * This function fills the canonical codeword of each byte value from the lengths.
+     * */
+    void assignCodes() {
+        CanonicalCode.assignCodes(lengths, 256, codes, nextCode);
+    }
+
+    /**
+     * This function takes the frequency of each byte value, fills its Huffman codeword length, and returns the
+     * longest one. The symbols are sorted by frequency and the tree is built in place in a single int array with the
+     * algorithm of Moffat and Katajainen.
+     * */
+    private int buildCodeLengths(int[] frequencies, int[] lengths) {
+        Arrays.fill(lengths, 0);
+        int n = 0;
+        for (int symbol = 0; symbol < 256; symbol++)
+            if (frequencies[symbol] > 0) sortedSymbols[n++] = ((long) frequencies[symbol] << 8) | symbol;
+        if (n == 0) return 0;
+        Arrays.sort(sortedSymbols, 0, n);
+        for (int i = 0; i < n; i++) tree[i] = (int) (sortedSymbols[i] >>> 8);
+        CanonicalCode.huffmanLengths(tree, n);
+
+        // The lightest symbols come first and get the longest codewords.
+        for (int i = 0; i < n; i++) lengths[(int) (sortedSymbols[i] & 0xFF)] = tree[i];
+        return tree[0];
+    }
+
+    /**
+     * This function returns the number of bits the bytes take with the byte code last built.
+     * */
+    long codeBits() {
+        return codeBits(frequencies, lengths);
+    }
+
+    private static long codeBits(int[] frequencies, int[] lengths) {
+        long bits = 0;
+        for (int symbol = 0; symbol < 256; symbol++) bits += (long) frequencies[symbol] * lengths[symbol];
+        return bits;
+    }
+
+    /**
+     * This function takes a list of bytes with an offset and a length, and fills the frequency of each byte value
+     * per context class of the byte before it (the first byte of the chunk is in class 0).
+     * */
+    void countContexts(byte[] data, int offset, int length) {
+        if (contextFrequencies == null) {
+            contextFrequencies = new int[HuffmanFormat.CONTEXT_CLASSES][256];
+            contextLengths = new int[HuffmanFormat.CONTEXT_CLASSES][256];
+            contextCodes = new int[HuffmanFormat.CONTEXT_CLASSES][256];
+        }
+        for (int[] classFrequencies : contextFrequencies) Arrays.fill(classFrequencies, 0);
+        int contextClass = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = data[i] & 0xFF;
+            contextFrequencies[contextClass][symbol]++;
+            contextClass = HuffmanFormat.contextClass(symbol);
+        }
+    }
+
+    /**
+     * This function builds the code lengths of every context class from the frequencies last counted, and returns
+     * the number of bits the bytes take with the codes.
+     * */
+    long buildContextLengths() {
+        long bits = 0;
+        for (int contextClass = 0; contextClass < HuffmanFormat.CONTEXT_CLASSES; contextClass++) {
+            buildLengths(contextFrequencies[contextClass], contextLengths[contextClass]);
+            bits += codeBits(contextFrequencies[contextClass], contextLengths[contextClass]);
+        }
+        return bits;
+    }
+
+    /**
+     * This function fills the canonical codewords of every context class from the lengths.
+     * */
+    void assignContextCodes() {
+        for (int contextClass = 0; contextClass < HuffmanFormat.CONTEXT_CLASSES; contextClass++)
+            CanonicalCode.assignCodes(contextLengths[contextClass], 256, contextCodes[contextClass], nextCode);
+    }
+
+    /**
+     * This function returns the entropy in bits of the bytes last counted per context class.
+     * */
+    double contextEntropyBits() {
+        double bits = 0;
+        for (int[] classFrequencies : contextFrequencies) bits += Histogram.entropyBits(classFrequencies, 256);
+        return bits;
+    }
+
+    /**
+     * This function takes a list of bytes with an offset and a length, and a symbol width (2 to 4 bytes), and counts
+     * the symbols made of width consecutive bytes (the bytes left over at the end are not coded). The symbols end up
+     * sorted in ngramSymbols with their frequencies at the same index.
+     * */
+    void countNgrams(byte[] data, int offset, int length, int width) {
+        if (ngramTable == null) {
+            ngramTable = new OpenAddressingHash(1024);
+            ngramNextCode = new int[HuffmanFormat.MAX_NGRAM_CODE_LENGTH + 1];
+        }
+
+        // Count the symbols, packed big-endian into long keys.
+        ngramTable.clear();
+        int end = offset + length / width * width;
+        for (int i = offset; i < end; i += width) ngramTable.increment(ngramKey(data, i, width));
+        int n = ngramTable.size();
+        if (ngramSymbols.length < n) {
+            int capacity = Math.max(n, 2 * ngramSymbols.length);
+            ngramSymbols = new long[capacity];
+            ngramFrequencies = new int[capacity];
+            ngramLengths = new int[capacity];
+            ngramCodes = new int[capacity];
+            ngramSorted = new long[capacity];
+            ngramTree = new int[capacity];
+        }
+
+        // Sort the symbols and collect their frequencies.
+        int symbolIdx = 0;
+        for (int slot = 0; slot < ngramTable.capacity(); slot++)
+            if (ngramTable.isFull(slot)) ngramSymbols[symbolIdx++] = ngramTable.key(slot);
+        Arrays.sort(ngramSymbols, 0, n);
+        for (int i = 0; i < n; i++)
+            ngramFrequencies[i] = ngramTable.value(ngramTable.indexOf(ngramSymbols[i]));
+    }
+
+    /**
+     * This function builds the code lengths of the n-grams last counted the same way as for bytes, limiting them to
+     * MAX_NGRAM_CODE_LENGTH if the tree is too deep, and returns the number of bits the symbols take with the code.
+     * */
+    long buildNgramLengths() {
+        int n = ngramTable.size();
+        for (int i = 0; i < n; i++) ngramSorted[i] = ((long) ngramFrequencies[i] << 32) | i;
+        Arrays.sort(ngramSorted, 0, n);
+        for (int i = 0; i < n; i++) ngramTree[i] = (int) (ngramSorted[i] >>> 32);
+        CanonicalCode.huffmanLengths(ngramTree, n);
+        for (int i = 0; i < n; i++) ngramLengths[(int) ngramSorted[i]] = ngramTree[i];
+        if (n > 0 && ngramTree[0] > HuffmanFormat.MAX_NGRAM_CODE_LENGTH)
+            CanonicalCode.limitLengths(ngramFrequencies, n, ngramLengths, HuffmanFormat.MAX_NGRAM_CODE_LENGTH);
+
+        long bits = 0;
+        for (int i = 0; i < n; i++) bits += (long) ngramFrequencies[i] * ngramLengths[i];
+        return bits;
+    }
+
+    /**
+     * This function fills the canonical codeword of each n-gram from the lengths.
+     * */
+    void assignNgramCodes() {
+        CanonicalCode.assignCodes(ngramLengths, ngramTable.size(), ngramCodes, ngramNextCode);
+    }
+
+    /**
+     * This function returns the entropy in bits of the bytes last counted, the least number of bits any code of
+     * single bytes could pack them in.
+     * */
+    double entropyBits() {
+        return Histogram.entropyBits(frequencies, frequencies.length);
+    }
+
+    /**
+     * This function returns the entropy in bits of the n-grams last counted.
+     * */
+    double ngramEntropyBits() {
+        return Histogram.entropyBits(ngramFrequencies, ngramTable.size());
+    }
+
+    /**
+     * This function builds the static dictionary of the n-gram code last built, so that the codeword of every symbol
+     * is found with a single perfect hash lookup while the chunk is packed.
+     * */
+    void buildNgramDictionary() {
+        int n = ngramTable.size();
+        // Build the table in bulk, on the arrays of the table of the previous chunk if any.
+        if (ngramDictionary == null) ngramDictionary = new NSpaceHash(ngramSymbols, n);
+        else ngramDictionary.build(ngramSymbols, n);
+        if (ngramSlotCodewords.length < ngramDictionary.capacity())
+            ngramSlotCodewords = new int[Math.max(ngramDictionary.capacity(), 2 * ngramSlotCodewords.length)];
+        for (int i = 0; i < n; i++)
+            ngramSlotCodewords[ngramDictionary.indexOf(ngramSymbols[i])] = ngramCodes[i] << 5 | ngramLengths[i];
+    }
+
+    /**
+     * This function takes a list of bytes, an index and a symbol width, and returns the width bytes there packed
+     * big-endian into a long.
+     * */
+    static long ngramKey(byte[] data, int idx, int width) {
+        long key = 0;
+        for (int i = idx; i < idx + width; i++) key = (key << 8) | (data[i] & 0xFF);
+        return key;
+    }
+}
@@ -0,0 +1,350 @@
+package org.example.huffman_coding.Hashing;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A two-level perfect hash table (Fredman, Komlós and Szemerédi) taking O(n) space. The first level hashes the n keys
+ * into about n buckets, and every bucket of s keys gets its own collision-free table of about s² slots, so a lookup
+ * is two hashes and a single comparison. Both levels use the universal family h(x) = Hx over GF(2), where every row of
+ * the random matrix H is a long and every bit of the hash is the parity of (row & x).
+ * <p>
+ * It is meant for static sets built once from a key array. Inserting a key whose slot is taken only rehashes the
+ * keys of its bucket (moved to new slots at the end when its table must grow), and the whole table is rebuilt once the
+ * keys have doubled since the last build, so n inserts take O(n) expected time.
+ * */
+public class NSpaceHash implements Hash {
+    //The number of inserted keys
+    private int n;
+    //The number of bits of the first level hash (there are 2 ^ bucketBits buckets)
+    private int bucketBits;
+    //Per bucket, the first slot of its table, the first row of its hash matrix and the number of rows (bits) of its
+    //hash (-1 for a bucket without slots)
+    private int[] bucketSlot = new int[1];
+    private int[] bucketRow = new int[1];
+    private byte[] bucketRowsCount = {-1};
+    //The number of slots and of rows in use, and the number of keys past which an insert rebuilds the whole table
+    private int slotsCount;
+    private int rowsCount;
+    private int limit;
+    //The rows of the first level hash matrix, then the rows of every bucket hash matrix
+    private long[] rows = new long[0];
+    //The first level hash of every byte value at every byte position of a key: the hash is linear, so the hash of
+    //a key is the XOR of the hashes of its bytes, which takes one lookup per non-zero byte instead of one bitCount
+    //per bit
+    private final int[] bucketTable = new int[8 * 256];
+    //The keys and whether each slot holds one
+    private long[] keys = new long[0];
+    private boolean[] full = new boolean[0];
+    //Scratch arrays used while building: the sorted keys, the keys grouped by bucket, the first level hash of every
+    //key and the size of every bucket, and the keys of a bucket rehashed by an insert
+    private long[] sortedKeys = new long[0];
+    private long[] groupedKeys = new long[0];
+    private int[] keyBucket = new int[0];
+    private int[] bucketSize = new int[1];
+    private long[] rehashedKeys = new long[0];
+    //The source of the random hash matrices (seeded, so that a table is always built the same way)
+    private final SplittableRandom random = new SplittableRandom(0x5DEECE66DL);
+
+    public NSpaceHash(int size) {
+        if (size < 0) throw new IllegalArgumentException("The size must not be negative.");
+    }
+
+    /**
+     * Takes a list of keys and builds the table holding them
+     * */
+    public NSpaceHash(long[] keys) {
+        this(keys, keys.length);
+    }
+
+    /**
+     * Takes a list of keys and a count, and builds the table holding the first count keys
+     * */
+    public NSpaceHash(long[] keys, int count) {
+        build(keys, count);
+    }
+
+    /**
+     * Return the hash table size
+     * */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Return the number of slots (slot indices go from 0 to capacity - 1), at most 8 per key after a build
+     * */
+    public int capacity() {
+        return slotsCount;
+    }
+
+    /**
+     * takes a string and convert it to an integer
+     * */
+    public long preHash(String s) {
+        long code = 0, p = 1;
+        for (int i = s.length() - 1; i >= 0; i--) {
+            code += s.charAt(i) * p;
+            p *= 128;
+        }
+        return code;
+    }
+
+    /**
+     * Takes the rows of a hash matrix (rowsCount rows from row on) and a key, and returns the rowsCount bits of the
+     * product of the matrix by the key
+     * */
+    private int hash(int row, int rowsCount, long key) {
+        int h = 0;
+        for (int i = 0; i < rowsCount; i++)
+            h |= (Long.bitCount(rows[row + i] & key) & 1) << i;
+        return h;
+    }
+
+    /**
+     * Fills the byte tables of the first level hash from its rows
+     * */
+    private void fillBucketTable() {
+        for (int position = 0; position < 8; position++) {
+            int base = position << 8;
+            bucketTable[base] = 0;
+            for (int value = 1; value < 256; value++) {
+                int lowestBit = value & -value;
+                bucketTable[base + value] = value == lowestBit
+                        ? hash(0, bucketBits, (long) value << (position << 3))
+                        : bucketTable[base + (value ^ lowestBit)] ^ bucketTable[base + lowestBit];
+            }
+        }
+    }
+
+    /**
+     * Takes a key and returns its first level hash (its bucket)
+     * */
+    private int bucketOf(long key) {
+        int h = 0;
+        for (int base = 0; key != 0; base += 256, key >>>= 8)
+            h ^= bucketTable[base + (int) (key & 0xFF)];
+        return h;
+    }
+
+    /**
+     * Takes a key and returns the only slot it can be stored in, or -1 if its bucket has no slots
+     * */
+    private int slotFor(long key) {
+        int bucket = bucketOf(key);
+        if (bucketRowsCount[bucket] < 0) return -1;
+        return bucketSlot[bucket] + hash(bucketRow[bucket], bucketRowsCount[bucket], key);
+    }
+
+    /**
+     * Takes a key and returns its slot, or -1 if it is not in the table
+     * */
+    public int indexOf(long key) {
+        int slot = slotFor(key);
+        return slot >= 0 && full[slot] && keys[slot] == key ? slot : -1;
+    }
+
+    /**
+     * Takes a slot and returns the key stored there
+     * */
+    public long key(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Takes a slot and returns true if a key is stored there
+     * */
+    public boolean isFull(int slot) {
+        return full[slot];
+    }
+
+    /**
+     * Takes a list of keys and a count, and rebuilds the table so that it holds exactly the first count keys
+     * (duplicates are stored once). The arrays of the previous table are reused when they are large enough. The
+     * table takes inserts without a rebuild until it holds twice as many keys.
+     * */
+    public void build(long[] source, int count) {
+        if (sortedKeys.length < count) {
+            sortedKeys = new long[count];
+            groupedKeys = new long[count];
+        }
+        System.arraycopy(source, 0, sortedKeys, 0, count);
+        Arrays.sort(sortedKeys, 0, count);
+        n = 0;
+        for (int i = 0; i < count; i++)
+            if (n == 0 || sortedKeys[i] != sortedKeys[n - 1]) sortedKeys[n++] = sortedKeys[i];
+
+        // First level: about one bucket per key, retrying until the sum of the squared bucket sizes is at most 4n
+        // (its expected value is below 2n, so this takes 2 tries at most on average).
+        bucketBits = n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+        int buckets = 1 << bucketBits;
+        if (bucketSize.length < buckets) {
+            bucketSize = new int[buckets];
+            bucketSlot = new int[buckets];
+            bucketRow = new int[buckets];
+            bucketRowsCount = new byte[buckets];
+        }
+        if (keyBucket.length < n) keyBucket = new int[n];
+        if (rows.length < bucketBits) rows = new long[Math.max(bucketBits, 2 * rows.length)];
+        long squares;
+        do {
+            for (int i = 0; i < bucketBits; i++) rows[i] = random.nextLong();
+            fillBucketTable();
+            Arrays.fill(bucketSize, 0, buckets, 0);
+            squares = 0;
+            for (int i = 0; i < n; i++) {
+                keyBucket[i] = bucketOf(sortedKeys[i]);
+                squares += 2L * bucketSize[keyBucket[i]]++ + 1;
+            }
+        } while (squares > 4L * n);
+
+        // Lay out the second level: a bucket of s keys gets the smallest power of 2 slots that is at least s².
+        int slots = 0;
+        rowsCount = bucketBits;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int size = bucketSize[bucket];
+            int bits = bucketBitsFor(size);
+            bucketSlot[bucket] = slots;
+            bucketRow[bucket] = rowsCount;
+            bucketRowsCount[bucket] = (byte) (size == 0 ? -1 : bits);
+            slots += size == 0 ? 0 : 1 << bits;
+            rowsCount += size == 0 ? 0 : bits;
+        }
+        slotsCount = slots;
+        limit = Math.max(2 * n, 2);
+        if (keys.length < slots) {
+            keys = new long[slots];
+            full = new boolean[slots];
+        } else {
+            Arrays.fill(full, false);
+        }
+        if (rows.length < rowsCount) rows = Arrays.copyOf(rows, rowsCount);
+
+        // Group the keys by bucket (reusing bucketSize as the next free position of every bucket), then find a
+        // collision-free hash for every bucket (every try succeeds with probability at least 1/2).
+        int position = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int size = bucketSize[bucket];
+            bucketSize[bucket] = position;
+            position += size;
+        }
+        for (int i = 0; i < n; i++) groupedKeys[bucketSize[keyBucket[i]]++] = sortedKeys[i];
+        int first = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int last = bucketSize[bucket];
+            if (last > first) rehashBucket(bucket, groupedKeys, first, last);
+            first = last;
+        }
+    }
+
+    /**
+     * Takes a number of keys and returns the number of bits of the hash of a bucket holding them, whose table is the
+     * smallest power of 2 that is at least the square of the number
+     * */
+    private static int bucketBitsFor(int size) {
+        return size <= 1 ? 0 : 64 - Long.numberOfLeadingZeros((long) size * size - 1);
+    }
+
+    /**
+     * Takes a bucket with slots and its keys (from first to last in a list), and draws hashes for the bucket until
+     * the keys are stored without collisions
+     * */
+    private void rehashBucket(int bucket, long[] bucketKeys, int first, int last) {
+        do {
+            for (int i = 0; i < bucketRowsCount[bucket]; i++) rows[bucketRow[bucket] + i] = random.nextLong();
+        } while (!placeBucket(bucket, bucketKeys, first, last));
+    }
+
+    /**
+     * Takes a bucket and its keys (from first to last in a list), and stores them with the current hash of the
+     * bucket. It returns false, leaving the bucket empty, if two of them collide.
+     * */
+    private boolean placeBucket(int bucket, long[] bucketKeys, int first, int last) {
+        for (int i = first; i < last; i++) {
+            int slot = bucketSlot[bucket] + hash(bucketRow[bucket], bucketRowsCount[bucket], bucketKeys[i]);
+            if (full[slot]) {
+                Arrays.fill(full, bucketSlot[bucket], bucketSlot[bucket] + (1 << bucketRowsCount[bucket]), false);
+                return false;
+            }
+            keys[slot] = bucketKeys[i];
+            full[slot] = true;
+        }
+        return true;
+    }
+
+    /**
+     * takes a key and inserts it in the hash table
+     * */
+    public boolean insert(long key) {
+        int slot = slotFor(key);
+        if (slot >= 0 && full[slot]) {
+            if (keys[slot] == key) return false;
+        } else if (slot >= 0) {
+            keys[slot] = key;
+            full[slot] = true;
+            n++;
+            return true;
+        }
+
+        if (n >= limit) {
+            // The keys have doubled since the last build: rebuild the table with every key.
+            long[] allKeys = new long[n + 1];
+            int count = 0;
+            for (int i = 0; i < slotsCount; i++)
+                if (full[i]) allKeys[count++] = keys[i];
+            allKeys[count] = key;
+            build(allKeys, count + 1);
+            return true;
+        }
+
+        // The slot is taken by another key (or the bucket has none): rehash the keys of the bucket with the new one.
+        int bucket = bucketOf(key);
+        int bits = bucketRowsCount[bucket];
+        int bucketSlots = bits < 0 ? 0 : 1 << bits;
+        if (rehashedKeys.length < bucketSlots + 1) rehashedKeys = new long[2 * bucketSlots + 2];
+        int size = 0;
+        int first = bucketSlot[bucket];
+        for (int i = first; i < first + bucketSlots; i++)
+            if (full[i]) rehashedKeys[size++] = keys[i];
+        Arrays.fill(full, first, first + bucketSlots, false);
+        rehashedKeys[size++] = key;
+        int newBits = bucketBitsFor(size);
+        if (newBits > bits) {
+            // The table of the bucket is too small: give it new slots and rows at the end (the old ones stay unused
+            // until the next build).
+            bucketSlot[bucket] = slotsCount;
+            bucketRow[bucket] = rowsCount;
+            bucketRowsCount[bucket] = (byte) newBits;
+            slotsCount += 1 << newBits;
+            rowsCount += newBits;
+            if (keys.length < slotsCount) {
+                keys = Arrays.copyOf(keys, Math.max(slotsCount, 2 * keys.length));
+                full = Arrays.copyOf(full, keys.length);
+            }
+            if (rows.length < rowsCount) rows = Arrays.copyOf(rows, Math.max(rowsCount, 2 * rows.length));
+        }
+        rehashBucket(bucket, rehashedKeys, 0, size);
+        n++;
+        return true;
+    }
+
+    /**
+     * takes a key and deletes it from the hash table
+     * */
+    public boolean delete(long key) {
+        int slot = indexOf(key);
+        if (slot < 0) return false;
+        full[slot] = false;
+        n--;
+        return true;
+    }
+
+    /**
+     * Takes a key and return true if found and false if not, with the slot of the key
+     * */
+    public AbstractMap.SimpleEntry<Boolean, Integer> search(long key) {
+        int slot = indexOf(key);
+        return slot < 0 ? new AbstractMap.SimpleEntry<>(false, null) : new AbstractMap.SimpleEntry<>(true, slot);
+    }
+}
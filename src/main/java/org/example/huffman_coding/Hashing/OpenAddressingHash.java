@@ -0,0 +1,193 @@
+package org.example.huffman_coding.Hashing;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+
+public class OpenAddressingHash implements Hash {
+    // Slot states
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte DELETED = 2;
+
+    //The number of inserted keys
+    private int n;
+    //The number of full or deleted slots (deleted slots still lengthen the probe sequences)
+    private int occupied;
+    //The keys, the value attached to each key, and the state of each slot (the table size is a power of 2)
+    private long[] keys;
+    private int[] values;
+    private byte[] states;
+    private int mask;
+
+    public OpenAddressingHash(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        states = new byte[capacity];
+        mask = capacity - 1;
+        occupied = n;
+    }
+
+    /**
+     * Return the hash table size
+     * */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Return the number of slots (slot indices go from 0 to capacity - 1)
+     * */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * takes a string and convert it to an integer
+     * */
+    public long preHash(String s) {
+        long code = 0, p = 1;
+        for (int i = s.length() - 1; i >= 0; i--) {
+            code += s.charAt(i) * p;
+            p *= 128;
+        }
+        return code;
+    }
+
+    /**
+     * Mixes all the bits of the key into the low bits (the finalizer of MurmurHash3)
+     * */
+    private int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * Takes a key and returns its slot, or -1 if it is not in the table
+     * */
+    public int indexOf(long key) {
+        for (int slot = hash(key); states[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (states[slot] == FULL && keys[slot] == key) return slot;
+        return -1;
+    }
+
+    /**
+     * Takes a key, inserts it with the value 0 if it is missing, and returns its slot
+     * */
+    public int slotOf(long key) {
+        int firstDeleted = -1;
+        int slot = hash(key);
+        for (; states[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (states[slot] == FULL && keys[slot] == key) return slot;
+            if (states[slot] == DELETED && firstDeleted < 0) firstDeleted = slot;
+        }
+        if (firstDeleted >= 0) {
+            slot = firstDeleted;
+        } else if (occupied + 1 > keys.length / 2) {
+            rehash(n + 1 > keys.length / 4 ? keys.length * 2 : keys.length);
+            return slotOf(key);
+        } else {
+            occupied++;
+        }
+        keys[slot] = key;
+        values[slot] = 0;
+        states[slot] = FULL;
+        n++;
+        return slot;
+    }
+
+    /**
+     * Takes a key, adds one to its value (inserting it if it is missing), and returns its slot
+     * */
+    public int increment(long key) {
+        int slot = slotOf(key);
+        values[slot]++;
+        return slot;
+    }
+
+    /**
+     * Takes a slot and returns the key stored there
+     * */
+    public long key(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Takes a slot and returns the value attached to its key
+     * */
+    public int value(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Takes a slot and a value and attaches the value to the key of the slot
+     * */
+    public void setValue(int slot, int value) {
+        values[slot] = value;
+    }
+
+    /**
+     * Takes a slot and returns true if a key is stored there
+     * */
+    public boolean isFull(int slot) {
+        return states[slot] == FULL;
+    }
+
+    /**
+     * Removes all the keys, keeping the table allocated
+     * */
+    public void clear() {
+        Arrays.fill(states, EMPTY);
+        n = 0;
+        occupied = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        byte[] oldStates = states;
+        n = 0;
+        allocate(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldStates[slot] != FULL) continue;
+            int newSlot = slotOf(oldKeys[slot]);
+            values[newSlot] = oldValues[slot];
+        }
+    }
+
+    /**
+     * takes a key and inserts it in the hash table
+     * */
+    public boolean insert(long key) {
+        int size = n;
+        slotOf(key);
+        return n > size;
+    }
+
+    /**
+     * takes a key and deletes it from the hash table
+     * */
+    public boolean delete(long key) {
+        int slot = indexOf(key);
+        if (slot < 0) return false;
+        states[slot] = DELETED;
+        n--;
+        return true;
+    }
+
+    /**
+     * Takes a key and return true if found and false if not, with the slot of the key
+     * */
+    public AbstractMap.SimpleEntry<Boolean, Integer> search(long key) {
+        int slot = indexOf(key);
+        return slot < 0 ? new AbstractMap.SimpleEntry<>(false, null) : new AbstractMap.SimpleEntry<>(true, slot);
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Counts the byte values of data, for the model of a chunk as well as for the statistics of a whole file. The bytes
+ * are counted into SUB_TABLES tables in turn, so that a run of the same byte increments a different counter every
+ * time instead of waiting on the previous increment of the same one; the tables are merged when the counts are read.
+ * A histogram is not thread-safe, but histograms counted by different threads can be merged with add.
+ * */
+public class Histogram {
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // The number of interleaved sub-tables
+    public static final int SUB_TABLES = 4;
+
+    // The sub-tables, table k holding the counts of the bytes at positions k, k + SUB_TABLES, ... as counts[k << 8 | b]
+    private final int[] counts = new int[SUB_TABLES << 8];
+    // The bytes counted in the sub-tables since their last fold into the totals, which keeps them from overflowing
+    private long pending;
+    // The counts folded out of the sub-tables (null until the first fold), and the number of bytes counted in all
+    private long[] totals;
+    private long total;
+
+    /**
+     * This function takes a list of bytes with an offset and a length, and counts the bytes.
+     * */
+    public void add(byte[] data, int offset, int length) {
+        if (pending + length > Integer.MAX_VALUE) fold();
+        pending += length;
+        total += length;
+
+        int[] counts = this.counts;
+        int end = offset + length;
+        int i = offset;
+        // Count 8 bytes per load, two into every sub-table.
+        for (; i + 8 <= end; i += 8) {
+            long word = (long) LONG_VIEW.get(data, i);
+            counts[(int) word & 0xFF]++;
+            counts[0x100 | (int) (word >>> 8) & 0xFF]++;
+            counts[0x200 | (int) (word >>> 16) & 0xFF]++;
+            counts[0x300 | (int) (word >>> 24) & 0xFF]++;
+            counts[(int) (word >>> 32) & 0xFF]++;
+            counts[0x100 | (int) (word >>> 40) & 0xFF]++;
+            counts[0x200 | (int) (word >>> 48) & 0xFF]++;
+            counts[0x300 | (int) (word >>> 56)]++;
+        }
+        for (; i < end; i++) counts[data[i] & 0xFF]++;
+    }
+
+    /**
+     * This function takes an input stream, counts all its bytes without closing it, and returns their number.
+     * */
+    public long add(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[64 << 10];
+        long count = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            add(buffer, 0, read);
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * This function takes another histogram and adds its counts to this one.
+     * */
+    public void add(Histogram other) {
+        long[] otherTotals = other.frequencies();
+        fold();
+        for (int symbol = 0; symbol < 256; symbol++) totals[symbol] += otherTotals[symbol];
+        total += other.total;
+    }
+
+    /**
+     * This function takes an array of 256 counters and fills it with the count of every byte value. The histogram
+     * must hold fewer than 2^31 bytes.
+     * */
+    public void frequencies(int[] frequencies) {
+        if (total > Integer.MAX_VALUE) throw new ArithmeticException("The counts do not fit in integers.");
+        int[] counts = this.counts;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int count = counts[symbol] + counts[0x100 | symbol] + counts[0x200 | symbol] + counts[0x300 | symbol];
+            frequencies[symbol] = totals == null ? count : (int) (totals[symbol] + count);
+        }
+    }
+
+    /**
+     * Return the count of every byte value
+     * */
+    public long[] frequencies() {
+        long[] frequencies = new long[256];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            frequencies[symbol] = (long) counts[symbol] + counts[0x100 | symbol] + counts[0x200 | symbol]
+                    + counts[0x300 | symbol];
+            if (totals != null) frequencies[symbol] += totals[symbol];
+        }
+        return frequencies;
+    }
+
+    /**
+     * Return the number of bytes counted
+     * */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Return the entropy of the counted bytes in bits, the least number of bits a code of single bytes could pack
+     * them in
+     * */
+    public double entropyBits() {
+        long[] frequencies = frequencies();
+        double bits = 0;
+        for (long frequency : frequencies)
+            if (frequency > 0) bits += frequency * Math.log((double) total / frequency);
+        return bits / Math.log(2);
+    }
+
+    /**
+     * This function takes a list of frequencies and the number of them in use, and returns their entropy in bits.
+     * */
+    public static double entropyBits(int[] frequencies, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) total += frequencies[i];
+        double bits = 0;
+        for (int i = 0; i < count; i++)
+            if (frequencies[i] > 0) bits += frequencies[i] * Math.log((double) total / frequencies[i]);
+        return bits / Math.log(2);
+    }
+
+    /**
+     * Clears the counts, so that the histogram can be reused for the next chunk
+     * */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        if (totals != null) Arrays.fill(totals, 0);
+        pending = 0;
+        total = 0;
+    }
+
+    /**
+     * Moves the counts of the sub-tables into the totals
+     * */
+    private void fold() {
+        if (totals == null) totals = new long[256];
+        for (int symbol = 0; symbol < 256; symbol++)
+            totals[symbol] += (long) counts[symbol] + counts[0x100 | symbol] + counts[0x200 | symbol]
+                    + counts[0x300 | symbol];
+        Arrays.fill(counts, 0);
+        pending = 0;
+    }
+}
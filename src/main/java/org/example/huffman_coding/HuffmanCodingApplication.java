@@ -4,19 +4,24 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
 
+/**
+ * The interactive application, which asks for the file path and the mode. Scripts and pipelines should use the
+ * CommandLine flags instead.
+ * */
 public class HuffmanCodingApplication {
     private static float getCompressionRatio(String inputFilePath, String outputFilePath) throws IOException {
         Path uncompressedFilePath = Paths.get(inputFilePath);
         Path compressedFilePath = Paths.get(outputFilePath);
         if (!Files.exists(uncompressedFilePath)) {
             System.out.println("The input file does not exist.");
-            System.exit(0);
+            System.exit(CommandLine.EXIT_FAILURE);
         }
         if (!Files.exists(compressedFilePath)) {
             System.out.println("The output file does not exist.");
-            System.exit(0);
+            System.exit(CommandLine.EXIT_FAILURE);
         }
         long uncompressedFileSize = Files.size(uncompressedFilePath);
         long compressedFileSize = Files.size(compressedFilePath);
@@ -33,19 +38,49 @@ public class HuffmanCodingApplication {
         String mode = scanner.nextLine();
 
         if (mode.equals("c")) {
+            System.out.println("Bytes per symbol (1-4): ");
             Compression compression = new Compression();
+            compression.setSymbolWidth(Integer.parseInt(scanner.nextLine().trim()));
+            CodecStatistics statistics = new CodecStatistics();
+            compression.setListener(statistics);
             long startTime = System.currentTimeMillis();
             String compressedFilePath = compression.compress(inputFilePath);
             System.out.println("Time taken: " + (System.currentTimeMillis() - startTime) + " ms");
             System.out.println("Compression ratio: " + getCompressionRatio(inputFilePath, compressedFilePath));
+            System.out.print(statistics);
         } else if (mode.equals("d")) {
             Decompression decompression = new Decompression();
+            CodecStatistics statistics = new CodecStatistics();
+            decompression.setListener(statistics);
             long startTime = System.currentTimeMillis();
             decompression.decompress(inputFilePath);
             System.out.println("Time taken: " + (System.currentTimeMillis() - startTime) + " ms");
+            System.out.print(statistics);
+        } else if (mode.equals("a")) {
+            // Archive every file of a directory (or a single file) into <path>.hca.
+            Path inputPath = Paths.get(inputFilePath);
+            Path archivePath = Paths.get(inputFilePath + ".hca");
+            Archive archive = new Archive();
+            long startTime = System.currentTimeMillis();
+            if (Files.isDirectory(inputPath)) archive.create(archivePath, inputPath);
+            else archive.create(archivePath, List.of(inputPath));
+            System.out.println("Time taken: " + (System.currentTimeMillis() - startTime) + " ms");
+            System.out.println("Archive: " + archivePath);
+        } else if (mode.equals("x")) {
+            // Extract an archive into the extracted.<name> directory next to it.
+            Path archivePath = Paths.get(inputFilePath);
+            String name = archivePath.getFileName().toString().replaceFirst("\\.hca$", "");
+            Path outputDirectory = archivePath.resolveSibling("extracted." + name);
+            long startTime = System.currentTimeMillis();
+            new Archive().extract(archivePath, outputDirectory);
+            System.out.println("Time taken: " + (System.currentTimeMillis() - startTime) + " ms");
+            System.out.println("Extracted to: " + outputDirectory);
+        } else if (mode.equals("l")) {
+            for (Archive.Entry entry : new Archive().list(Paths.get(inputFilePath)))
+                System.out.println(entry.name() + "\t" + entry.size() + "\t" + entry.compressedSize());
         } else {
-            System.out.println("Invalid mode. Please enter either 'c' or 'd'.");
-            System.exit(0);
+            System.out.println("Invalid mode. Please enter 'c', 'd', 'a' (archive), 'x' (extract) or 'l' (list).");
+            System.exit(CommandLine.EXIT_USAGE);
         }
     }
 }
\ No newline at end of file
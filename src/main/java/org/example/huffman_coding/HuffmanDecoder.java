@@ -0,0 +1,223 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class HuffmanDecoder {
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    // The number of bits resolved by a single lookup in the primary table
+    public static final int TABLE_BITS = 11;
+
+    // Primary table indexed by the next TABLE_BITS bits: (symbol << 8) | codeLength, or 0 for a longer code
+    private final int[] table = new int[1 << TABLE_BITS];
+    // Canonical decoding state for the codes longer than TABLE_BITS (the slow path): per length, the first codeword,
+    // the number of codewords, and the index of the first one in the symbols sorted by (length, symbol)
+    private final int[] firstCode = new int[HuffmanFormat.MAX_NGRAM_CODE_LENGTH + 1];
+    private final int[] lengthsCount = new int[HuffmanFormat.MAX_NGRAM_CODE_LENGTH + 1];
+    private final int[] firstIndex = new int[HuffmanFormat.MAX_NGRAM_CODE_LENGTH + 1];
+    private final int[] nextCode = new int[HuffmanFormat.MAX_NGRAM_CODE_LENGTH + 1];
+    // Sized for the byte alphabet, and grown for larger (n-gram) alphabets
+    private int[] sortedSymbols = new int[256];
+    private int[] codes = new int[256];
+    private int maxLength;
+
+    public HuffmanDecoder() {}
+
+    /**
+     * This function takes the codeword length of each byte value (0 for an unused one), rebuilds the canonical code,
+     * and refills the lookup tables for it.
+     * */
+    public void build(int[] lengths) throws IOException {
+        build(lengths, 256);
+    }
+
+    /**
+     * This function takes the codeword lengths of the first count symbols (0 for an unused one, at most
+     * MAX_NGRAM_CODE_LENGTH), rebuilds the canonical code, and refills the lookup tables for it. The decoded values
+     * are the symbol indices. The lengths must be those of a complete prefix code (their Kraft sum is exactly 1),
+     * except for a single symbol or none at all: lengths read from corrupted data that overlap would overrun the
+     * tables.
+     * */
+    public void build(int[] lengths, int count) throws IOException {
+        if (codes.length < count) {
+            codes = new int[count];
+            sortedSymbols = new int[count];
+        }
+        Arrays.fill(table, 0);
+        Arrays.fill(lengthsCount, 0);
+        maxLength = 0;
+        // The Kraft sum of the codewords, in units of the longest possible codeword
+        long kraftSum = 0;
+        int usedSymbols = 0;
+        for (int symbol = 0; symbol < count; symbol++) {
+            int length = lengths[symbol];
+            if (length < 0 || length > HuffmanFormat.MAX_NGRAM_CODE_LENGTH)
+                throw new IOException("Corrupted code lengths table.");
+            lengthsCount[length]++;
+            maxLength = Math.max(maxLength, length);
+            if (length == 0) continue;
+            kraftSum += 1L << (HuffmanFormat.MAX_NGRAM_CODE_LENGTH - length);
+            usedSymbols++;
+        }
+        lengthsCount[0] = 0;
+        long completeSum = 1L << HuffmanFormat.MAX_NGRAM_CODE_LENGTH;
+        if (kraftSum > completeSum || (kraftSum < completeSum && usedSymbols > 1))
+            throw new IOException("Corrupted code lengths table.");
+
+        // Sort the symbols by (length, symbol), the order in which canonical codewords are assigned.
+        int index = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            firstIndex[length] = index;
+            index += lengthsCount[length];
+        }
+        System.arraycopy(firstIndex, 0, nextCode, 0, maxLength + 1);
+        for (int symbol = 0; symbol < count; symbol++)
+            if (lengths[symbol] > 0) sortedSymbols[nextCode[lengths[symbol]]++] = symbol;
+
+        CanonicalCode.assignCodes(lengths, count, codes, nextCode);
+        for (int length = 1; length <= maxLength; length++)
+            if (lengthsCount[length] > 0) firstCode[length] = codes[sortedSymbols[firstIndex[length]]];
+
+        for (int symbol = 0; symbol < count; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0 || length > TABLE_BITS) continue;
+            // Every index that starts with this code resolves to it.
+            int start = codes[symbol] << (TABLE_BITS - length);
+            int end = start + (1 << (TABLE_BITS - length));
+            Arrays.fill(table, start, end, (symbol << 8) | length);
+        }
+    }
+
+    /**
+     * This function takes a reader of the compressed data, an output buffer, an offset in it, and a number of bytes,
+     * and decodes that many bytes into the buffer.
+     * */
+    public void decode(BitReader bitReader, byte[] output, int offset, int count) throws IOException {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            int entry = table[bitReader.peekBits(TABLE_BITS)];
+            if (entry == 0) entry = decodeLong(bitReader);
+            bitReader.skipBits(entry & 0xFF);
+            output[i] = (byte) (entry >>> 8);
+        }
+    }
+
+    /**
+     * This function takes the compressed data, the boundaries of the HuffmanFormat.STREAMS sub-streams of an
+     * interleaved chunk in it (STREAMS + 1 offsets), an output buffer, an offset in it, and a number of bytes, and
+     * decodes that many bytes into the buffer, byte i coming from sub-stream i % STREAMS. The sub-streams are decoded
+     * in the same loop, each one read from its bit position by a single 8-byte load, so that the lookups of one
+     * sub-stream do not wait on the code lengths of another.
+     * */
+    public void decodeInterleaved(byte[] data, int[] streamOffsets, byte[] output, int offset, int count)
+            throws IOException {
+        int[] table = this.table;
+        long position0 = (long) streamOffsets[0] << 3, position1 = (long) streamOffsets[1] << 3;
+        long position2 = (long) streamOffsets[2] << 3, position3 = (long) streamOffsets[3] << 3;
+        // The loads stay in the sub-streams while every sub-stream has 8 more bytes.
+        long limit0 = (long) (streamOffsets[1] - 8) << 3, limit1 = (long) (streamOffsets[2] - 8) << 3;
+        long limit2 = (long) (streamOffsets[3] - 8) << 3, limit3 = (long) (streamOffsets[4] - 8) << 3;
+        int end = offset + count;
+        int i = offset;
+        for (; i + 4 <= end && position0 <= limit0 && position1 <= limit1 && position2 <= limit2
+                && position3 <= limit3; i += 4) {
+            long bits0 = (long) LONG_VIEW.get(data, (int) (position0 >>> 3)) << (position0 & 7);
+            long bits1 = (long) LONG_VIEW.get(data, (int) (position1 >>> 3)) << (position1 & 7);
+            long bits2 = (long) LONG_VIEW.get(data, (int) (position2 >>> 3)) << (position2 & 7);
+            long bits3 = (long) LONG_VIEW.get(data, (int) (position3 >>> 3)) << (position3 & 7);
+            int entry0 = table[(int) (bits0 >>> (64 - TABLE_BITS))];
+            int entry1 = table[(int) (bits1 >>> (64 - TABLE_BITS))];
+            int entry2 = table[(int) (bits2 >>> (64 - TABLE_BITS))];
+            int entry3 = table[(int) (bits3 >>> (64 - TABLE_BITS))];
+            if (entry0 == 0) entry0 = decodeLong(bits0);
+            if (entry1 == 0) entry1 = decodeLong(bits1);
+            if (entry2 == 0) entry2 = decodeLong(bits2);
+            if (entry3 == 0) entry3 = decodeLong(bits3);
+            position0 += entry0 & 0xFF;
+            position1 += entry1 & 0xFF;
+            position2 += entry2 & 0xFF;
+            position3 += entry3 & 0xFF;
+            output[i] = (byte) (entry0 >>> 8);
+            output[i + 1] = (byte) (entry1 >>> 8);
+            output[i + 2] = (byte) (entry2 >>> 8);
+            output[i + 3] = (byte) (entry3 >>> 8);
+        }
+
+        // Decode the last bytes of the sub-streams one at a time.
+        long[] positions = {position0, position1, position2, position3};
+        BitReader[] bitReaders = new BitReader[HuffmanFormat.STREAMS];
+        for (int stream = 0; stream < HuffmanFormat.STREAMS; stream++) {
+            int byteOffset = (int) (positions[stream] >>> 3);
+            if (byteOffset > streamOffsets[stream + 1]) throw new IOException("Corrupted compressed data.");
+            bitReaders[stream] = new BitReader(data, byteOffset, streamOffsets[stream + 1] - byteOffset);
+            int bitOffset = (int) (positions[stream] & 7);
+            if (bitOffset > 0) bitReaders[stream].readBits(bitOffset);
+        }
+        for (int stream = (i - offset) % HuffmanFormat.STREAMS; i < end; i++) {
+            decode(bitReaders[stream], output, i, 1);
+            stream = stream + 1 == HuffmanFormat.STREAMS ? 0 : stream + 1;
+        }
+    }
+
+    /**
+     * This function takes a reader of the compressed data, the decoder of every context class, an output buffer, an
+     * offset in it, and a number of bytes, and decodes that many bytes into the buffer, each one with the decoder of
+     * the context class of the byte before it (class 0 for the first one).
+     * */
+    public static void decodeContexts(BitReader bitReader, HuffmanDecoder[] decoders, byte[] output, int offset,
+                                      int count) throws IOException {
+        int end = offset + count;
+        HuffmanDecoder decoder = decoders[0];
+        for (int i = offset; i < end; i++) {
+            int entry = decoder.table[bitReader.peekBits(TABLE_BITS)];
+            if (entry == 0) entry = decoder.decodeLong(bitReader);
+            bitReader.skipBits(entry & 0xFF);
+            int symbol = entry >>> 8;
+            output[i] = (byte) symbol;
+            decoder = decoders[HuffmanFormat.contextClass(symbol)];
+        }
+    }
+
+    /**
+     * This function takes a reader of the compressed data, the symbols of an n-gram code (each one packed big-endian
+     * in the low width bytes of a long), an output buffer, an offset in it, and a number of symbols, and decodes that
+     * many symbols (width bytes each) into the buffer.
+     * */
+    public void decode(BitReader bitReader, long[] symbols, int width, byte[] output, int offset, int count)
+            throws IOException {
+        int end = offset + count * width;
+        for (int i = offset; i < end; i += width) {
+            int entry = table[bitReader.peekBits(TABLE_BITS)];
+            if (entry == 0) entry = decodeLong(bitReader);
+            bitReader.skipBits(entry & 0xFF);
+            long symbol = symbols[entry >>> 8];
+            for (int byteIdx = width - 1; byteIdx >= 0; byteIdx--) {
+                output[i + byteIdx] = (byte) symbol;
+                symbol >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Slow path for the codes that do not fit in the primary table
+     * */
+    private int decodeLong(BitReader bitReader) throws IOException {
+        return decodeLong((long) bitReader.peekBits(maxLength) << (64 - maxLength));
+    }
+
+    /**
+     * Slow path for the codes that do not fit in the primary table, given the next bits of the stream left aligned
+     * */
+    private int decodeLong(long bits) throws IOException {
+        for (int length = TABLE_BITS + 1; length <= maxLength; length++) {
+            int offset = (int) (bits >>> (64 - length)) - firstCode[length];
+            if (offset >= 0 && offset < lengthsCount[length])
+                return (sortedSymbols[firstIndex[length] + offset] << 8) | length;
+        }
+        throw new IOException("Corrupted compressed data.");
+    }
+}
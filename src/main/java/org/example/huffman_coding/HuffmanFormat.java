@@ -0,0 +1,239 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Layout of a compressed (.hc) file:
+ * <pre>
+ * header:  'H' 'C' version
+ * blocks:  type (1 byte), length of the block body (4 bytes), body
+ * </pre>
+ * A CHUNK block body is the chunk length in bytes (4 bytes), its code lengths table, and the packed codewords.
+ * The table is either sparse (count - 1, then a (symbol, length) pair per used symbol) or dense (256 lengths, two
+ * per byte), whichever is smaller. The codewords are canonical, so they are rebuilt from the lengths alone.
+ * <p>
+ * An NGRAM_CHUNK block codes symbols of 2 to 4 bytes instead of single bytes: its body is the chunk length (4 bytes),
+ * the symbol width (1 byte), the number of symbols in the code (4 bytes), the symbols in ascending order as varint
+ * deltas, the codeword length of each symbol (1 byte each), the last (chunk length % width) bytes of the chunk stored
+ * raw, and the packed codewords.
+ * <p>
+ * An INTERLEAVED_CHUNK block is a CHUNK block whose codewords are split into STREAMS sub-streams, byte i of the chunk
+ * going to sub-stream i % STREAMS, so that the decoder can decode the sub-streams side by side: its body is the chunk
+ * length (4 bytes), the code lengths table, the sizes of all the sub-streams but the last (4 bytes each), and the
+ * packed sub-streams one after the other.
+ * <p>
+ * A CONTEXT_CHUNK block codes every byte with the code of the context class of the byte before it (an order-1 model
+ * over CONTEXT_CLASSES classes, the first byte of the chunk being in class 0): its body is the chunk length (4 bytes),
+ * a mask of the classes that have a code (1 bit per class, class 0 in the lowest bit), the code lengths table of each
+ * of these classes in order, and the packed codewords.
+ * <p>
+ * A STATIC_CHUNK block is coded with a static dictionary shared out of band instead of a code of its own: its body
+ * is the chunk length (4 bytes), the dictionary id (4 bytes), and the packed codewords.
+ * <p>
+ * A STORED_CHUNK block body is the chunk length (4 bytes) and the chunk itself, for the chunks no code would shrink,
+ * and a RUN_CHUNK block body is the chunk length (4 bytes) and the single byte value the whole chunk repeats.
+ * <p>
+ * A REF_CHUNK block stands for a chunk identical to an earlier one: its body is the chunk length (4 bytes) and the
+ * number of the earlier chunk (4 bytes, counting every chunk block from 0). It may only refer to a chunk that is not a
+ * reference itself and that is still in a deduplication cache of the size given by the DEDUP block, which then comes
+ * right after the header: its body is the number of chunks the cache holds (4 bytes). The decoders keep an LRU cache
+ * of at least that many decoded chunks, adding every chunk that is not a reference and marking the chunk a reference
+ * points to as used, exactly as the compressor did.
+ * <p>
+ * The chunk blocks are followed by an INDEX block (the chunk count, then the block size and chunk length of every
+ * chunk) and by an END block whose body is the 8-byte offset of the INDEX block, so the index can be found from the
+ * end of the file and the chunks can be located (and decoded) independently.
+ * <p>
+ * A compact message sets COMPACT in the version byte of the header, which is then followed by a single STATIC_CHUNK
+ * block and nothing else: no DEDUP, INDEX or END block, which would take 30 bytes more. The compressor frames a
+ * whole input that fits in one chunk coded with a static dictionary this way, since small payloads are what static
+ * dictionaries are for.
+ * */
+public final class HuffmanFormat {
+    private HuffmanFormat() {}
+
+    public static final byte[] MAGIC = {'H', 'C'};
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 3;
+    // The flag of the version byte of a compact message
+    public static final int COMPACT = 0x80;
+
+    // The longest codeword allowed, so that a length fits in a nibble of the dense table
+    public static final int MAX_CODE_LENGTH = 15;
+    // The longest codeword of an n-gram code, and the widest n-gram symbol in bytes
+    public static final int MAX_NGRAM_CODE_LENGTH = 24;
+    public static final int MAX_SYMBOL_WIDTH = 4;
+
+    // Block types
+    public static final int END = 0;
+    public static final int CHUNK = 1;
+    public static final int INDEX = 2;
+    public static final int NGRAM_CHUNK = 3;
+    public static final int INTERLEAVED_CHUNK = 4;
+    public static final int STORED_CHUNK = 5;
+    public static final int RUN_CHUNK = 6;
+    public static final int CONTEXT_CHUNK = 7;
+    public static final int STATIC_CHUNK = 8;
+    public static final int REF_CHUNK = 9;
+    public static final int DEDUP = 10;
+
+    // The largest deduplication cache, in chunks
+    public static final int MAX_DEDUP_CHUNKS = 1 << 16;
+
+    // The number of context classes of an order-1 code, and the class of every byte value: control and whitespace,
+    // digits, upper case letters, lower case vowels, other lower case letters, sentence punctuation, other symbols,
+    // and non-ASCII bytes
+    public static final int CONTEXT_CLASSES = 8;
+    private static final byte[] CONTEXT_CLASS = new byte[256];
+
+    static {
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int contextClass;
+            if (symbol <= ' ' || symbol == 0x7F) contextClass = 0;
+            else if (symbol >= 0x80) contextClass = 7;
+            else if (symbol >= '0' && symbol <= '9') contextClass = 1;
+            else if (symbol >= 'A' && symbol <= 'Z') contextClass = 2;
+            else if ("aeiou".indexOf(symbol) >= 0) contextClass = 3;
+            else if (symbol >= 'a' && symbol <= 'z') contextClass = 4;
+            else if (".,;:!?".indexOf(symbol) >= 0) contextClass = 5;
+            else contextClass = 6;
+            CONTEXT_CLASS[symbol] = (byte) contextClass;
+        }
+    }
+
+    // The number of sub-streams of an interleaved chunk
+    public static final int STREAMS = 4;
+
+    // The size of the block header (type and body length), and of the whole END and DEDUP blocks
+    public static final int BLOCK_HEADER_SIZE = 5;
+    public static final int END_BLOCK_SIZE = BLOCK_HEADER_SIZE + 8;
+    public static final int DEDUP_BLOCK_SIZE = BLOCK_HEADER_SIZE + 4;
+    // The longest body of a chunk block: a chunk is stored as it is unless its code is smaller, and only the
+    // sub-stream sizes and padding of an interleaved chunk can go past a stored chunk of Compression.MAX_CHUNK_SIZE
+    public static final int MAX_CHUNK_BLOCK_LENGTH = 4 + Compression.MAX_CHUNK_SIZE + 5 * STREAMS;
+
+    // Code lengths table forms
+    public static final int SPARSE_TABLE = 0;
+    public static final int DENSE_TABLE = 1;
+    public static final int DENSE_TABLE_SIZE = 128;
+
+    /**
+     * This function takes the first bytes of a compressed file and checks that they are a header of this format
+     * version.
+     * */
+    public static void checkHeader(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC[0] || data[1] != MAGIC[1])
+            throw new IOException("Not a Huffman compressed file.");
+        int version = data[2] & 0xFF & ~COMPACT;
+        if (version != VERSION) throw new IOException("Unsupported format version " + version + ".");
+    }
+
+    /**
+     * This function takes a header checked by checkHeader and returns true if it is the header of a compact message.
+     * */
+    public static boolean isCompact(byte[] header) {
+        return (header[2] & COMPACT) != 0;
+    }
+
+    /**
+     * This function takes the type of the block that follows the header of a compact message and checks that it is
+     * the static chunk block a compact message is made of.
+     * */
+    public static void checkCompactBlock(int blockType) throws IOException {
+        if (blockType != STATIC_CHUNK) throw new IOException("Corrupted compact message.");
+    }
+
+    /**
+     * This function takes the type and the body length of a block read from compressed data, and checks the length
+     * before any buffer is allocated for the block.
+     * */
+    public static void checkBlockLength(int blockType, int blockLength) throws IOException {
+        if (blockLength < 0 || (isChunk(blockType) && blockLength > MAX_CHUNK_BLOCK_LENGTH))
+            throw new IOException("Corrupted block length.");
+    }
+
+    /**
+     * This function takes a block type and returns true if the block holds a chunk of the original data.
+     * */
+    public static boolean isChunk(int blockType) {
+        return blockType == CHUNK || blockType == NGRAM_CHUNK || blockType == INTERLEAVED_CHUNK
+                || blockType == STORED_CHUNK || blockType == RUN_CHUNK || blockType == CONTEXT_CHUNK
+                || blockType == STATIC_CHUNK || blockType == REF_CHUNK;
+    }
+
+    /**
+     * This function takes a byte value and returns its context class, which selects the code of the next byte in a
+     * context chunk.
+     * */
+    public static int contextClass(int symbol) {
+        return CONTEXT_CLASS[symbol];
+    }
+
+    /**
+     * This function takes an integer and writes it to the stream as 4 bytes (big-endian).
+     * */
+    public static void writeInt(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value >>> 24);
+        outputStream.write(value >>> 16);
+        outputStream.write(value >>> 8);
+        outputStream.write(value);
+    }
+
+    /**
+     * This function takes a list of bytes, an index and an integer, and writes the integer there as 4 bytes
+     * (big-endian).
+     * */
+    public static void writeInt(byte[] data, int idx, int value) {
+        data[idx] = (byte) (value >>> 24);
+        data[idx + 1] = (byte) (value >>> 16);
+        data[idx + 2] = (byte) (value >>> 8);
+        data[idx + 3] = (byte) value;
+    }
+
+    /**
+     * This function takes a long and writes it to the stream as 8 bytes (big-endian).
+     * */
+    public static void writeLong(OutputStream outputStream, long value) throws IOException {
+        writeInt(outputStream, (int) (value >>> 32));
+        writeInt(outputStream, (int) value);
+    }
+
+    /**
+     * This function takes a list of bytes and an index, and reads the 4-byte (big-endian) integer there.
+     * */
+    public static int readInt(byte[] data, int idx) {
+        return (data[idx] & 0xFF) << 24 | (data[idx + 1] & 0xFF) << 16 | (data[idx + 2] & 0xFF) << 8
+                | (data[idx + 3] & 0xFF);
+    }
+
+    /**
+     * This function takes a list of bytes and an index, and reads the 8-byte (big-endian) long there.
+     * */
+    public static long readLong(byte[] data, int idx) {
+        return ((long) readInt(data, idx) << 32) | (readInt(data, idx + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * This function takes a non-negative long and returns the number of bytes of its varint form.
+     * */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    /**
+     * This function takes a list of bytes, an index and a non-negative long, writes the long there as a varint (7 bits
+     * per byte, least significant group first, the high bit set on every byte but the last), and returns the index
+     * after it.
+     * */
+    public static int writeVarLong(byte[] data, int idx, long value) {
+        while ((value & ~0x7FL) != 0) {
+            data[idx++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        data[idx++] = (byte) value;
+        return idx;
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.huffman_coding;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An input stream that decompresses a compressed stream chunk by chunk as it is read. Only one compressed chunk block
+ * and its decoded bytes are kept in memory, whatever the size of the stream, besides the recent chunks of a stream
+ * compressed with deduplication.
+ * */
+public class HuffmanInputStream extends FilterInputStream {
+    private final ChunkDecoder chunkDecoder;
+    // The compressed chunk block being decoded
+    private byte[] block = new byte[HuffmanFormat.BLOCK_HEADER_SIZE];
+    // The unread part of the decoded chunk (in chunkDecoder.output)
+    private int position;
+    private int limit;
+    private boolean headerRead;
+    private boolean ended;
+    // Whether the stream is a compact message, which ends with its single chunk block
+    private boolean compact;
+    // The recently decoded chunks references are resolved from (null without deduplication), and the next chunk number
+    private ChunkCache dedupCache;
+    private int chunkNumber;
+    // The listener of the metrics (or null), the time the first block was read at, and the bytes read and decoded
+    private final CodecListener listener;
+    private long startTime;
+    private long compressedBytes;
+    private long decompressedBytes;
+
+    public HuffmanInputStream(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * This function takes the compressed stream and a listener of the metrics (null for none).
+     * */
+    public HuffmanInputStream(InputStream in, CodecListener listener) {
+        this(in, listener, DictionaryRegistry.shared());
+    }
+
+    /**
+     * This function takes the compressed stream, a listener of the metrics (null for none), and the registry of the
+     * static dictionaries the stream may have been compressed with.
+     * */
+    public HuffmanInputStream(InputStream in, CodecListener listener, DictionaryRegistry dictionaries) {
+        this(in, listener, dictionaries, new ChunkDecoder());
+    }
+
+    /**
+     * This function takes the compressed stream, a listener of the metrics (null for none), the registry of the
+     * static dictionaries, and the decoder to decode the chunks with, which must not be used elsewhere until the
+     * stream is read.
+     * */
+    HuffmanInputStream(InputStream in, CodecListener listener, DictionaryRegistry dictionaries,
+                       ChunkDecoder chunkDecoder) {
+        super(in);
+        this.chunkDecoder = chunkDecoder;
+        this.listener = listener;
+        chunkDecoder.listener = listener;
+        chunkDecoder.dictionaries = dictionaries;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextChunk()) return -1;
+        return chunkDecoder.output[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == limit && !nextChunk()) return -1;
+        int copied = Math.min(len, limit - position);
+        System.arraycopy(chunkDecoder.output, position, b, off, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        // Write the decoded chunks straight from the decoder, without copying them into a transfer buffer.
+        long transferred = 0;
+        while (position < limit || nextChunk()) {
+            out.write(chunkDecoder.output, position, limit - position);
+            transferred += limit - position;
+            position = limit;
+        }
+        return transferred;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (position < limit || nextChunk())) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {}
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads blocks until the next non-empty chunk is decoded, and returns false once the end block is reached.
+     * */
+    private boolean nextChunk() throws IOException {
+        if (!headerRead) {
+            startTime = PhaseTimer.start(listener);
+            byte[] header = readFully(new byte[HuffmanFormat.HEADER_SIZE], HuffmanFormat.HEADER_SIZE);
+            HuffmanFormat.checkHeader(header);
+            compact = HuffmanFormat.isCompact(header);
+            compressedBytes = HuffmanFormat.HEADER_SIZE;
+            headerRead = true;
+        }
+        while (!ended) {
+            long time = PhaseTimer.start(listener);
+            readFully(block, HuffmanFormat.BLOCK_HEADER_SIZE);
+            int blockType = block[0];
+            int blockLength = HuffmanFormat.readInt(block, 1);
+            HuffmanFormat.checkBlockLength(blockType, blockLength);
+            if (compact) HuffmanFormat.checkCompactBlock(blockType);
+
+            if (HuffmanFormat.isChunk(blockType)) {
+                readBlockBody(blockLength);
+                PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                compressedBytes += HuffmanFormat.BLOCK_HEADER_SIZE + blockLength;
+                position = 0;
+                if (blockType == HuffmanFormat.REF_CHUNK) {
+                    if (dedupCache == null) throw new IOException("Chunk reference without deduplication.");
+                    int reference = ChunkDecoder.referencedChunk(block, 0, chunkNumber);
+                    limit = chunkDecoder.copyChunk(dedupCache.get(reference));
+                    if (limit != HuffmanFormat.readInt(block, HuffmanFormat.BLOCK_HEADER_SIZE))
+                        throw new IOException("Corrupted chunk reference.");
+                } else {
+                    limit = chunkDecoder.decompressChunk(block, 0);
+                    if (dedupCache != null) dedupCache.add(chunkNumber, chunkDecoder.output, limit);
+                }
+                chunkNumber++;
+                decompressedBytes += limit;
+                if (compact) {
+                    // Nothing follows the chunk block of a compact message, which may be embedded in a longer stream.
+                    ended = true;
+                    if (listener != null)
+                        listener.completed(compressedBytes, decompressedBytes, System.nanoTime() - startTime);
+                }
+                if (limit > 0) return true;
+            } else if (blockType == HuffmanFormat.DEDUP) {
+                if (blockLength != 4 || dedupCache != null || chunkNumber > 0)
+                    throw new IOException("Corrupted deduplication block.");
+                byte[] dedupBlock = new byte[HuffmanFormat.DEDUP_BLOCK_SIZE];
+                System.arraycopy(block, 0, dedupBlock, 0, HuffmanFormat.BLOCK_HEADER_SIZE);
+                if (in.readNBytes(dedupBlock, HuffmanFormat.BLOCK_HEADER_SIZE, 4) != 4)
+                    throw new EOFException("Unexpected end of the compressed stream.");
+                dedupCache = new ChunkCache(ChunkDecoder.dedupCacheSize(dedupBlock, 0));
+                compressedBytes += HuffmanFormat.DEDUP_BLOCK_SIZE;
+            } else if (blockType == HuffmanFormat.INDEX || blockType == HuffmanFormat.END) {
+                in.skipNBytes(blockLength);
+                compressedBytes += HuffmanFormat.BLOCK_HEADER_SIZE + blockLength;
+                ended = blockType == HuffmanFormat.END;
+                if (ended && listener != null) {
+                    long endTime = PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+                    listener.completed(compressedBytes, decompressedBytes, endTime - startTime);
+                }
+            } else {
+                throw new IOException("Unknown block type " + blockType + ".");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function takes the body length of the chunk block whose header is in the block buffer, and reads the body
+     * after the header. The buffer grows at most twice as large as the bytes read so far, so that the length of a
+     * corrupted or truncated stream cannot make it allocate much more than the stream holds.
+     * */
+    private void readBlockBody(int blockLength) throws IOException {
+        int blockSize = HuffmanFormat.BLOCK_HEADER_SIZE + blockLength;
+        int size = HuffmanFormat.BLOCK_HEADER_SIZE;
+        while (size < blockSize) {
+            if (size == block.length) block = Arrays.copyOf(block, Math.min(blockSize, Math.max(2 * size, 1 << 16)));
+            int count = Math.min(blockSize, block.length) - size;
+            if (in.readNBytes(block, size, count) != count)
+                throw new EOFException("Unexpected end of the compressed stream.");
+            size += count;
+        }
+    }
+
+    private byte[] readFully(byte[] buffer, int length) throws IOException {
+        if (in.readNBytes(buffer, 0, length) != length)
+            throw new EOFException("Unexpected end of the compressed stream.");
+        return buffer;
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.huffman_coding;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream that compresses the bytes written to it, chunk by chunk, into the underlying stream. Only one chunk
+ * of input is buffered, plus 16 bytes per written chunk for the chunk index that is written on finish(). With the
+ * deduplication of the compression on, a chunk repeating one of the recent chunks is written as a reference to it, as
+ * Compression.compress does, and the recent chunks are kept too (as many as the deduplication cache holds). Chunks cut
+ * short by flush() only match chunks cut at the same places.
+ * */
+public class HuffmanOutputStream extends FilterOutputStream {
+    private final Compression compression;
+    // The bytes of the chunk being collected
+    private final byte[] chunk;
+    private int count;
+    // Where every chunk block lands in the compressed stream
+    private final ChunkIndex index;
+    private boolean finished;
+    // The recent chunks repeated chunks are looked up in (null without deduplication), and the next chunk number
+    private final ChunkCache dedupCache;
+    private int chunkNumber;
+    // The time the stream was created at, when the compression has a listener of the metrics
+    private final long startTime;
+
+    public HuffmanOutputStream(OutputStream out) throws IOException {
+        this(out, new Compression());
+    }
+
+    /**
+     * This function takes the underlying stream and the compression used to encode the chunks, and writes the file
+     * header (and the size of the deduplication cache if the compression deduplicates chunks).
+     * */
+    public HuffmanOutputStream(OutputStream out, Compression compression) throws IOException {
+        super(out);
+        this.compression = compression;
+        this.chunk = new byte[compression.getChunkSize()];
+        this.startTime = PhaseTimer.start(compression.getListener());
+        int deduplication = compression.getDeduplication();
+        this.dedupCache = deduplication > 0 ? new ChunkCache(deduplication) : null;
+        this.index = new ChunkIndex(Compression.writeFileHeader(out, deduplication));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        chunk[count++] = (byte) b;
+        if (count == chunk.length) writeChunk();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int copied = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+            if (count == chunk.length) writeChunk();
+        }
+    }
+
+    /**
+     * Compresses the bytes collected so far as a (possibly short) chunk, so that everything written until now can be
+     * decompressed by the other end, and flushes the underlying stream. Flushing often lowers the compression ratio.
+     * */
+    @Override
+    public void flush() throws IOException {
+        if (!finished && count > 0) writeChunk();
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining bytes and writes the chunk index and the end block, without closing the underlying
+     * stream.
+     * */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (count > 0) writeChunk();
+        CodecListener listener = compression.getListener();
+        long time = PhaseTimer.start(listener);
+        index.write(out);
+        finished = true;
+        out.flush();
+        if (listener != null) {
+            long endTime = PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+            listener.completed(index.originalSize(), index.compressedSize(), endTime - startTime);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        int reference = dedupCache == null ? -1
+                : Compression.deduplicate(dedupCache, chunkNumber++, ByteBuffer.wrap(chunk, 0, count));
+        byte[] block = reference >= 0 ? compression.compressReferenceChunk(count, reference)
+                : compression.compressChunk(chunk, 0, count);
+        long time = PhaseTimer.start(compression.getListener());
+        out.write(block);
+        PhaseTimer.lap(compression.getListener(), CodecListener.Phase.IO, time);
+        index.add(block);
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) throw new IOException("The stream is already finished.");
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.huffman_coding;
+
+/**
+ * Times the phases of the codec for a listener, without reading the clock when there is none
+ * */
+final class PhaseTimer {
+    private PhaseTimer() {}
+
+    /**
+     * This function takes a listener (or null) and returns the time a phase starts at.
+     * */
+    static long start(CodecListener listener) {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * This function takes a listener (or null), a phase and the time it started at, reports the phase, and returns
+     * the time it ended at, which is where the next phase starts.
+     * */
+    static long lap(CodecListener listener, CodecListener.Phase phase, long start) {
+        if (listener == null) return 0;
+        long now = System.nanoTime();
+        listener.phaseCompleted(phase, now - start);
+        return now;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.huffman_coding;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the read, code and write stages of a compression or a decompression at the same time: a reader thread reads
+ * the input and submits the coding of every part of it to the coders, and the calling thread writes the results in
+ * their original order. The bounded queue of the results in flight holds the reader back when the coders or the
+ * writer fall behind, so the input and output latencies overlap with the coding and memory stays bounded.
+ * */
+final class Pipeline {
+    private Pipeline() {}
+
+    /**
+     * The read stage: returns the coding of the next part of the input, or null at the end of the input
+     * */
+    interface Reader<R> {
+        Callable<R> next() throws IOException;
+    }
+
+    /**
+     * The write stage, called with every result in order
+     * */
+    interface Writer<R> {
+        void write(R result) throws IOException;
+    }
+
+    /**
+     * This function takes a reader, the coders, the number of results in flight and a writer, and runs the pipeline
+     * until the reader reaches the end of the input or a stage fails. The buffers a reader takes from a BufferPool
+     * must be more than the results in flight plus 2 (the one being written and the one waiting to be queued), so
+     * that a coder never waits on a buffer held by a result that waits on it.
+     * */
+    static <R> void run(Reader<R> reader, ExecutorService coders, int depth, Writer<R> writer, String name)
+            throws IOException {
+        BlockingQueue<Future<R>> results = new ArrayBlockingQueue<>(depth);
+        Future<R> end = CompletableFuture.completedFuture(null);
+        Thread readerThread = new Thread(() -> {
+            try {
+                Callable<R> coding;
+                while ((coding = reader.next()) != null) results.put(coders.submit(coding));
+                results.put(end);
+            } catch (InterruptedException e) {
+                // The writer stopped the pipeline.
+            } catch (IOException | RuntimeException e) {
+                try {
+                    results.put(CompletableFuture.failedFuture(e));
+                } catch (InterruptedException stopped) {
+                    // The writer stopped the pipeline.
+                }
+            }
+        }, name + "-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        boolean completed = false;
+        try {
+            Future<R> result;
+            while ((result = results.take()) != end) writer.write(result.get());
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The pipeline was interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Failed to code a chunk.", e.getCause());
+        } finally {
+            if (!completed) {
+                readerThread.interrupt();
+                for (Future<R> result : results) result.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.huffman_coding;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads ranges of the original file out of a compressed file without decompressing it: the chunk index at the end of
+ * the file locates the chunks that cover a range, and only those are read and decoded. The most recently used decoded
+ * chunks are cached, so that neighbouring reads decode each chunk once. A reader can be shared between threads.
+ * */
+public class RandomAccessReader implements Closeable {
+    // The number of decoded chunks cached when no capacity is given
+    public static final int DEFAULT_CACHED_CHUNKS = 16;
+
+    private final FileChannel fileChannel;
+    private final ChunkIndex index;
+    private final ChunkDecoder chunkDecoder = new ChunkDecoder();
+    // The decoded chunks by chunk number, in access order
+    private final Map<Integer, byte[]> cache;
+
+    public RandomAccessReader(Path compressedPath) throws IOException {
+        this(compressedPath, DEFAULT_CACHED_CHUNKS);
+    }
+
+    /**
+     * This function takes a compressed file path and the number of decoded chunks to cache, and opens the file and
+     * reads its chunk index.
+     * */
+    public RandomAccessReader(Path compressedPath, int cachedChunks) throws IOException {
+        if (cachedChunks < 1) throw new IllegalArgumentException("At least one chunk must be cached.");
+        fileChannel = FileChannel.open(compressedPath, StandardOpenOption.READ);
+        try {
+            HuffmanFormat.checkHeader(ChunkIndex.readFully(fileChannel, 0, HuffmanFormat.HEADER_SIZE));
+            index = ChunkIndex.read(fileChannel);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+        cache = new LinkedHashMap<>(2 * cachedChunks, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cachedChunks;
+            }
+        };
+    }
+
+    /**
+     * This function takes the listener of the decoding phases and chunk sizes (null disables the metrics, which is
+     * the default).
+     * */
+    public synchronized void setListener(CodecListener listener) {
+        chunkDecoder.listener = listener;
+    }
+
+    /**
+     * This function takes the registry of the static dictionaries the file may have been compressed with (the shared
+     * registry by default).
+     * */
+    public synchronized void setDictionaries(DictionaryRegistry dictionaries) {
+        chunkDecoder.dictionaries = dictionaries;
+    }
+
+    /**
+     * Return the size of the original file
+     * */
+    public long size() {
+        return index.originalSize();
+    }
+
+    /**
+     * This function takes an offset in the original file and a length, and returns the bytes of the original file in
+     * that range (fewer than length at the end of the file).
+     * */
+    public byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) throw new IndexOutOfBoundsException("Negative offset or length.");
+        byte[] bytes = new byte[(int) Math.max(Math.min(length, index.originalSize() - offset), 0)];
+        read(offset, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * This function takes an offset in the original file and a buffer range, copies the bytes of the original file
+     * from the offset into the buffer, and returns how many were copied (-1 at or past the end of the file).
+     * */
+    public synchronized int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException {
+        if (offset < 0) throw new IndexOutOfBoundsException("Negative offset " + offset + ".");
+        if (bufferOffset < 0 || length < 0 || length > buffer.length - bufferOffset)
+            throw new IndexOutOfBoundsException("Invalid buffer range.");
+        if (offset >= index.originalSize()) return length == 0 ? 0 : -1;
+
+        int copied = 0;
+        long position = offset;
+        while (copied < length && position < index.originalSize()) {
+            int chunk = index.chunkAt(position);
+            byte[] data = chunk(chunk);
+            int start = (int) (position - index.chunkOffset(chunk));
+            int count = Math.min(length - copied, data.length - start);
+            System.arraycopy(data, start, buffer, bufferOffset + copied, count);
+            copied += count;
+            position += count;
+        }
+        return copied;
+    }
+
+    /**
+     * This function takes a chunk number and returns the decoded chunk, from the cache or read from the file.
+     * */
+    private byte[] chunk(int chunk) throws IOException {
+        byte[] data = cache.get(chunk);
+        if (data != null) return data;
+
+        CodecListener listener = chunkDecoder.listener;
+        int blockSize = index.blockSize(chunk);
+        long time = PhaseTimer.start(listener);
+        byte[] block = chunkDecoder.blockBuffer(blockSize);
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, blockSize);
+        long blockOffset = index.blockOffset(chunk);
+        while (buffer.hasRemaining())
+            if (fileChannel.read(buffer, blockOffset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of the compressed file.");
+        ChunkIndex.checkBlock(block, blockSize);
+        PhaseTimer.lap(listener, CodecListener.Phase.IO, time);
+
+        // A repeated chunk is read from the chunk it refers to, which comes earlier in the file.
+        if (block[0] == HuffmanFormat.REF_CHUNK) {
+            data = chunk(ChunkDecoder.referencedChunk(block, 0, chunk));
+        } else {
+            int chunkLength = chunkDecoder.decompressChunk(block, 0);
+            data = Arrays.copyOf(chunkDecoder.output, chunkLength);
+        }
+        if (data.length != index.chunkLength(chunk)) throw new IOException("Corrupted chunk index.");
+        cache.put(chunk, data);
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.huffman_coding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A byte code trained once on a sample corpus and shared by many small payloads, whose chunks then carry its id
+ * instead of a code table. Every byte value has a codeword, so any data can be coded with it. A dictionary is
+ * immutable, and its decoder tables are built once, so it can be used by any number of threads.
+ * <p>
+ * Layout of a dictionary (.hcd) file:
+ * <pre>
+ * header:  'H' 'D' version
+ * body:    id (4 bytes), the codeword lengths of the 256 byte values (two per byte)
+ * </pre>
+ * */
+public final class StaticDictionary {
+    public static final byte[] MAGIC = {'H', 'D'};
+    public static final int VERSION = 1;
+    public static final int FILE_SIZE = 3 + 4 + HuffmanFormat.DENSE_TABLE_SIZE;
+
+    private final int id;
+    // The codeword length and canonical codeword of each byte value
+    private final int[] lengths;
+    private final int[] codes = new int[256];
+    // Only read once built, so it is shared by all the decoding threads
+    private final HuffmanDecoder decoder = new HuffmanDecoder();
+
+    /**
+     * This function takes a non-negative id and the codeword length of each byte value (1 to MAX_CODE_LENGTH, a
+     * complete prefix code), and creates the dictionary.
+     * */
+    public StaticDictionary(int id, int[] lengths) {
+        if (id < 0) throw new IllegalArgumentException("The dictionary id must not be negative.");
+        if (lengths.length != 256) throw new IllegalArgumentException("There must be a length per byte value.");
+        for (int length : lengths)
+            if (length < 1 || length > HuffmanFormat.MAX_CODE_LENGTH)
+                throw new IllegalArgumentException("Invalid codeword length " + length + ".");
+        this.id = id;
+        this.lengths = lengths.clone();
+        try {
+            decoder.build(this.lengths);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The codeword lengths are not those of a complete prefix code.", e);
+        }
+        CanonicalCode.assignCodes(this.lengths, codes);
+    }
+
+    /**
+     * This function takes an id and the histogram of a sample corpus, and returns the dictionary of the Huffman code
+     * of the corpus. Every byte value is counted once more, so that the bytes missing from the corpus get (long)
+     * codewords too.
+     * */
+    public static StaticDictionary train(int id, Histogram histogram) {
+        long[] counts = histogram.frequencies();
+        // Scale the counts down so that their sum fits in an int.
+        long scale = Math.max(1, (histogram.total() >>> 24) + 1);
+        EncoderContext context = new EncoderContext();
+        for (int symbol = 0; symbol < 256; symbol++) context.frequencies[symbol] = (int) (1 + counts[symbol] / scale);
+        context.buildLengths();
+        return new StaticDictionary(id, context.lengths);
+    }
+
+    /**
+     * This function takes an id and the samples of a corpus (typical payloads), and returns the dictionary trained
+     * on them.
+     * */
+    public static StaticDictionary train(int id, Iterable<byte[]> samples) {
+        Histogram histogram = new Histogram();
+        for (byte[] sample : samples) histogram.add(sample, 0, sample.length);
+        return train(id, histogram);
+    }
+
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Return the codeword length of each byte value
+     * */
+    public int[] lengths() {
+        return lengths.clone();
+    }
+
+    int[] codeLengths() {
+        return lengths;
+    }
+
+    int[] codes() {
+        return codes;
+    }
+
+    HuffmanDecoder decoder() {
+        return decoder;
+    }
+
+    /**
+     * This function takes the frequency of each byte value and returns the number of bits they take with this code.
+     * */
+    public long codeBits(int[] frequencies) {
+        long bits = 0;
+        for (int symbol = 0; symbol < 256; symbol++) bits += (long) frequencies[symbol] * lengths[symbol];
+        return bits;
+    }
+
+    /**
+     * This function takes an output stream and writes the dictionary file to it, without closing it.
+     * */
+    public void write(OutputStream outputStream) throws IOException {
+        outputStream.write(MAGIC);
+        outputStream.write(VERSION);
+        HuffmanFormat.writeInt(outputStream, id);
+        for (int symbol = 0; symbol < 256; symbol += 2) outputStream.write(lengths[symbol] << 4 | lengths[symbol + 1]);
+    }
+
+    /**
+     * This function takes a path and writes the dictionary file there.
+     * */
+    public void save(Path path) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(outputStream);
+        }
+    }
+
+    /**
+     * This function takes an input stream, reads a dictionary file from it without closing it, and returns the
+     * dictionary.
+     * */
+    public static StaticDictionary read(InputStream inputStream) throws IOException {
+        byte[] data = new byte[FILE_SIZE];
+        try {
+            new DataInputStream(inputStream).readFully(data);
+        } catch (EOFException e) {
+            throw new IOException("Truncated dictionary file.", e);
+        }
+        if (data[0] != MAGIC[0] || data[1] != MAGIC[1]) throw new IOException("Not a dictionary file.");
+        if (data[2] != VERSION) throw new IOException("Unsupported dictionary version " + data[2] + ".");
+
+        int[] lengths = new int[256];
+        for (int symbol = 0; symbol < 256; symbol += 2) {
+            lengths[symbol] = (data[7 + symbol / 2] & 0xFF) >>> 4;
+            lengths[symbol + 1] = data[7 + symbol / 2] & 0x0F;
+        }
+        try {
+            return new StaticDictionary(HuffmanFormat.readInt(data, 3), lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted dictionary file.", e);
+        }
+    }
+
+    /**
+     * This function takes the path of a dictionary file and returns the dictionary it holds.
+     * */
+    public static StaticDictionary load(Path path) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(inputStream);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof StaticDictionary && id == ((StaticDictionary) other).id
+                && Arrays.equals(lengths, ((StaticDictionary) other).lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id + Arrays.hashCode(lengths);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveTests {
+    @TempDir
+    Path directory;
+
+    private static byte[] text(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) ('a' + random.nextInt(12));
+        return data;
+    }
+
+    @Test
+    void archivesAndExtractsSmallAndLargeFiles() throws IOException {
+        Random random = new Random(3);
+        Path source = Files.createDirectories(directory.resolve("source"));
+        Files.createDirectories(source.resolve("logs"));
+        for (int i = 0; i < 40; i++) Files.write(source.resolve("logs/small-" + i + ".log"), text(random, i * 97));
+        // Two entries above the in-memory limit, compressed concurrently into spill files.
+        Files.write(source.resolve("large-1.bin"), text(random, (8 << 20) + 1000));
+        Files.write(source.resolve("large-2.bin"), text(random, (9 << 20)));
+        Path archivePath = directory.resolve("files.hca");
+
+        new Archive(new Compression(), 4).create(archivePath, source);
+        List<Archive.Entry> entries = new Archive().list(archivePath);
+        assertThat(entries).hasSize(42);
+        assertThat(entries.stream().map(Archive.Entry::name)).contains("large-1.bin", "logs/small-7.log");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(path -> path.getFileName().toString()).collect(Collectors.toList()))
+                    .containsExactlyInAnyOrder("source", "files.hca");
+        }
+
+        Path output = directory.resolve("output");
+        new Archive().extract(archivePath, output);
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList()))
+                assertThat(Files.readAllBytes(output.resolve(source.relativize(file))))
+                        .isEqualTo(Files.readAllBytes(file));
+        }
+        ByteArrayOutputStream large = new ByteArrayOutputStream();
+        new Archive().extract(archivePath, "large-2.bin", large);
+        assertThat(large.toByteArray()).isEqualTo(Files.readAllBytes(source.resolve("large-2.bin")));
+    }
+
+    @Test
+    void rejectsDuplicateNames() throws IOException {
+        Path first = Files.createDirectories(directory.resolve("a")).resolve("same.txt");
+        Path second = Files.createDirectories(directory.resolve("b")).resolve("same.txt");
+        Files.writeString(first, "first");
+        Files.writeString(second, "second");
+
+        assertThatThrownBy(() -> new Archive().create(directory.resolve("files.hca"), List.of(first, second)))
+                .isInstanceOf(IOException.class).hasMessageContaining("Duplicate entry name");
+    }
+}
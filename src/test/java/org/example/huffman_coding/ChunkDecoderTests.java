@@ -0,0 +1,82 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkDecoderTests {
+    /**
+     * This function takes a block type, a chunk length and the rest of the block body, and returns the block.
+     * */
+    static byte[] block(int blockType, int chunkLength, int... body) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(blockType);
+        HuffmanFormat.writeInt(block, 4 + body.length);
+        HuffmanFormat.writeInt(block, chunkLength);
+        for (int b : body) block.write(b);
+        return block.toByteArray();
+    }
+
+    @Test
+    void decodesSingleSymbolCode() throws IOException {
+        // One symbol of length 1 is the only incomplete code allowed: every bit 0 decodes it.
+        byte[] block = block(HuffmanFormat.CHUNK, 12, HuffmanFormat.SPARSE_TABLE, 0, 'x', 1, 0, 0);
+        ChunkDecoder chunkDecoder = new ChunkDecoder();
+
+        assertThat(chunkDecoder.decompressChunk(block, 0)).isEqualTo(12);
+        assertThat(Arrays.copyOf(chunkDecoder.output, 12)).containsOnly('x');
+    }
+
+    @Test
+    void rejectsOversubscribedCode() throws IOException {
+        // Three codewords of one bit.
+        byte[] block = block(HuffmanFormat.CHUNK, 4, HuffmanFormat.SPARSE_TABLE, 2, 'a', 1, 'b', 1, 'c', 1, 0x55);
+
+        assertThatThrownBy(() -> new ChunkDecoder().decompressChunk(block, 0))
+                .isInstanceOf(IOException.class).hasMessage("Corrupted code lengths table.");
+    }
+
+    @Test
+    void rejectsIncompleteCode() throws IOException {
+        // Two codewords of two bits leave half of the code space unassigned.
+        byte[] block = block(HuffmanFormat.CHUNK, 4, HuffmanFormat.SPARSE_TABLE, 1, 'a', 2, 'b', 2, 0x55);
+
+        assertThatThrownBy(() -> new ChunkDecoder().decompressChunk(block, 0))
+                .isInstanceOf(IOException.class).hasMessage("Corrupted code lengths table.");
+    }
+
+    @Test
+    void rejectsTablesPastTheBlockEnd() throws IOException {
+        // The sparse table announces four entries, and the dense table is cut short; the bytes after the block would
+        // complete both tables.
+        byte[] sparse = block(HuffmanFormat.CHUNK, 4, HuffmanFormat.SPARSE_TABLE, 3, 'a', 2, 'b', 2);
+        byte[] dense = block(HuffmanFormat.CHUNK, 4, HuffmanFormat.DENSE_TABLE, 0x11, 0x11);
+        for (byte[] block : new byte[][] {sparse, dense}) {
+            byte[] data = Arrays.copyOf(block, block.length + 256);
+            Arrays.fill(data, block.length, data.length, (byte) 0x22);
+            assertThatThrownBy(() -> new ChunkDecoder().decompressChunk(data, 0))
+                    .isInstanceOf(IOException.class).hasMessage("Corrupted code lengths table.");
+        }
+    }
+
+    @Test
+    void rejectsLengthsAboveTheMaximum() throws IOException {
+        byte[] block = block(HuffmanFormat.CHUNK, 4, HuffmanFormat.SPARSE_TABLE, 0, 'a', 16, 0);
+
+        assertThatThrownBy(() -> new ChunkDecoder().decompressChunk(block, 0))
+                .isInstanceOf(IOException.class).hasMessage("Corrupted code lengths table.");
+    }
+
+    @Test
+    void rejectsIncompleteStaticDictionary() {
+        int[] lengths = new int[256];
+        Arrays.fill(lengths, 9);
+
+        assertThatThrownBy(() -> new StaticDictionary(1, lengths)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CodecServerTests {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CodecServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new CodecServer(new CodecService(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private HttpResponse<byte[]> post(String path, byte[] body) throws Exception {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * This function takes a block type, the length the block header announces, and the block body, and returns a
+     * compressed stream made of the header and that block.
+     * */
+    private static byte[] stream(int blockType, int blockLength, int... body) {
+        byte[] data = new byte[HuffmanFormat.HEADER_SIZE + HuffmanFormat.BLOCK_HEADER_SIZE + body.length];
+        data[0] = HuffmanFormat.MAGIC[0];
+        data[1] = HuffmanFormat.MAGIC[1];
+        data[2] = HuffmanFormat.VERSION;
+        data[3] = (byte) blockType;
+        HuffmanFormat.writeInt(data, 4, blockLength);
+        for (int i = 0; i < body.length; i++) data[8 + i] = (byte) body[i];
+        return data;
+    }
+
+    @Test
+    void compressesAndDecompresses() throws Exception {
+        byte[] data = "GET /index.html 200\n".repeat(5000).getBytes(StandardCharsets.UTF_8);
+
+        HttpResponse<byte[]> compressed = post("/compress", data);
+        assertThat(compressed.statusCode()).isEqualTo(200);
+        assertThat(compressed.body().length).isLessThan(data.length / 4);
+        HttpResponse<byte[]> decompressed = post("/decompress", compressed.body());
+        assertThat(decompressed.statusCode()).isEqualTo(200);
+        assertThat(decompressed.body()).isEqualTo(data);
+    }
+
+    @Test
+    void rejectsGarbage() throws Exception {
+        assertThat(post("/decompress", "not compressed at all".getBytes(StandardCharsets.UTF_8)).statusCode())
+                .isEqualTo(400);
+        assertThat(post("/decompress", new byte[0]).statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void rejectsTruncatedStream() throws Exception {
+        byte[] compressed = post("/compress", "abcabcabd".repeat(100).getBytes(StandardCharsets.UTF_8)).body();
+
+        for (int length : new int[] {2, HuffmanFormat.HEADER_SIZE + 3, compressed.length / 2})
+            assertThat(post("/decompress", Arrays.copyOf(compressed, length)).statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void rejectsHugeLengthsWithoutAllocating() throws Exception {
+        // A run chunk and a chunk block announcing about 2 GB, in a few bytes.
+        assertThat(post("/decompress", stream(HuffmanFormat.RUN_CHUNK, 5, 0x7F, 0xFF, 0xFF, 0xF0, 'a')).statusCode())
+                .isEqualTo(400);
+        assertThat(post("/decompress", stream(HuffmanFormat.CHUNK, 0x7FFFFFF0, 0, 0, 0, 1)).statusCode())
+                .isEqualTo(400);
+        assertThat(post("/decompress", stream(HuffmanFormat.CHUNK, -1)).statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void rejectsCorruptedBlocks() throws Exception {
+        // An oversubscribed code, a table cut by the end of the block, and an unknown block type.
+        assertThat(post("/decompress", stream(HuffmanFormat.CHUNK, 11, 0, 0, 0, 4, HuffmanFormat.SPARSE_TABLE, 2,
+                'a', 1, 'b', 1, 0)).statusCode()).isEqualTo(400);
+        assertThat(post("/decompress", stream(HuffmanFormat.CHUNK, 6, 0, 0, 0, 4, HuffmanFormat.DENSE_TABLE, 0x11))
+                .statusCode()).isEqualTo(400);
+        assertThat(post("/decompress", stream(42, 0)).statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void rejectsOtherMethods() throws Exception {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/compress");
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(405);
+        assertThat(response.headers().firstValue("Allow")).hasValue("POST");
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class CodecStatisticsTests {
+    /**
+     * This function takes a compression and a list of bytes, and returns the statistics of compressing them.
+     * */
+    private static CodecStatistics compress(Compression compression, byte[] data) throws IOException {
+        CodecStatistics statistics = new CodecStatistics();
+        compression.setListener(statistics);
+        compression.compress(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+        return statistics;
+    }
+
+    private static byte[] text(int length) {
+        Random random = new Random(5);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) ('a' + random.nextInt(4));
+        return data;
+    }
+
+    @Test
+    void runsAndReferencesStayOutOfTheAverages() throws IOException {
+        Compression compression = new Compression();
+        compression.setLevel(1);
+        compression.setChunkSize(1000);
+        CodecStatistics coded = compress(compression, text(4000));
+
+        // The same coded chunks, then two runs and two references to the first chunks.
+        byte[] data = Arrays.copyOf(text(4000), 8000);
+        Arrays.fill(data, 4000, 6000, (byte) 'z');
+        System.arraycopy(data, 0, data, 6000, 2000);
+        compression.setDeduplication(16);
+        CodecStatistics mixed = compress(compression, data);
+
+        assertThat(coded.averageCodeLength()).isCloseTo(2, within(0.01));
+        assertThat(mixed.chunks()).isEqualTo(8);
+        assertThat(mixed.repeatedChunks()).isEqualTo(4);
+        assertThat(mixed.averageCodeLength()).isEqualTo(coded.averageCodeLength());
+        assertThat(mixed.entropy()).isEqualTo(coded.entropy());
+        assertThat(mixed.toString()).contains("Runs and references: 4 chunks, 4000 bytes");
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandLineTests {
+    @TempDir
+    Path directory;
+
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8);
+
+    @Test
+    void compressesAndDecompressesFiles() throws Exception {
+        byte[] data = new byte[100_000];
+        Random random = new Random(1);
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ('a' + random.nextInt(8));
+        Path input = Files.write(directory.resolve("input.txt"), data);
+        Path compressed = directory.resolve("input.txt.hc");
+        Path output = directory.resolve("output.txt");
+
+        assertThat(CommandLine.run(new String[] {"-c", "-3", "-b", "8K", "-i", input.toString(), "-o",
+                compressed.toString()}, err)).isEqualTo(CommandLine.EXIT_OK);
+        assertThat(CommandLine.run(new String[] {"-d", "-T", "4", "-i", compressed.toString(), "-o",
+                output.toString()}, err)).isEqualTo(CommandLine.EXIT_OK);
+        assertThat(Files.readAllBytes(output)).isEqualTo(data);
+    }
+
+    @Test
+    void missingInputLeavesExistingOutput() throws Exception {
+        Path output = Files.writeString(directory.resolve("important.txt"), "keep me");
+        String missing = directory.resolve("missing.hc").toString();
+
+        assertThat(CommandLine.run(new String[] {"-d", "-i", missing, "-o", output.toString()}, err))
+                .isEqualTo(CommandLine.EXIT_FAILURE);
+        assertThat(CommandLine.run(new String[] {"-c", "-i", missing, "-o", output.toString()}, err))
+                .isEqualTo(CommandLine.EXIT_FAILURE);
+        assertThat(Files.readString(output)).isEqualTo("keep me");
+        assertThat(errors.toString(StandardCharsets.UTF_8)).contains("No such file");
+    }
+
+    @Test
+    void corruptedInputDeletesPartialOutput() throws Exception {
+        Path input = Files.write(directory.resolve("corrupted.hc"), new byte[] {'H', 'C', 2, 1, 0, 0, 0, 9});
+        Path output = directory.resolve("output.txt");
+
+        assertThat(CommandLine.run(new String[] {"-d", "-i", input.toString(), "-o", output.toString()}, err))
+                .isEqualTo(CommandLine.EXIT_FAILURE);
+        assertThat(output).doesNotExist();
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThat(CommandLine.run(new String[] {"-7"}, err)).isEqualTo(CommandLine.EXIT_USAGE);
+        assertThat(CommandLine.run(new String[] {"-b", "0"}, err)).isEqualTo(CommandLine.EXIT_USAGE);
+        assertThat(CommandLine.run(new String[] {"-T"}, err)).isEqualTo(CommandLine.EXIT_USAGE);
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactMessageTests {
+    private static final byte[] MESSAGE = "{\"user\":\"alice\",\"action\":\"login\",\"status\":\"ok\",\"ms\":120}"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    private static StaticDictionary dictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            samples.add(("{\"user\":\"user" + i + "\",\"action\":\"" + (i % 3 == 0 ? "logout" : "login")
+                    + "\",\"status\":\"ok\",\"ms\":" + i % 97 + "}").getBytes(StandardCharsets.US_ASCII));
+        return StaticDictionary.train(7, samples);
+    }
+
+    private static byte[] compress(StaticDictionary dictionary, int chunkSize, byte[] data) throws IOException {
+        Compression compression = new Compression();
+        compression.setDictionary(dictionary);
+        compression.setChunkSize(chunkSize);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        compression.compress(new ByteArrayInputStream(data), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] decompress(DictionaryRegistry dictionaries, boolean pipelined, byte[] compressed)
+            throws IOException {
+        Decompression decompression = new Decompression();
+        decompression.setDictionaries(dictionaries);
+        decompression.setPipelined(pipelined);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        decompression.decompress(new ByteArrayInputStream(compressed), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    void smallStaticMessageIsCompact() throws IOException {
+        StaticDictionary dictionary = dictionary();
+        DictionaryRegistry dictionaries = new DictionaryRegistry();
+        dictionaries.register(dictionary);
+        byte[] compressed = compress(dictionary, Compression.CHUNK_SIZE, MESSAGE);
+
+        assertThat(MESSAGE).hasSize(56);
+        assertThat(compressed.length).isLessThan(MESSAGE.length);
+        assertThat(HuffmanFormat.isCompact(compressed)).isTrue();
+        assertThat(compressed[HuffmanFormat.HEADER_SIZE]).isEqualTo((byte) HuffmanFormat.STATIC_CHUNK);
+
+        assertThat(decompress(dictionaries, false, compressed)).isEqualTo(MESSAGE);
+        assertThat(decompress(dictionaries, true, compressed)).isEqualTo(MESSAGE);
+        try (HuffmanInputStream inputStream = new HuffmanInputStream(new ByteArrayInputStream(compressed), null,
+                dictionaries)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(MESSAGE);
+        }
+
+        Path path = directory.resolve("message.json.hc");
+        Files.write(path, compressed);
+        try (RandomAccessReader reader = new RandomAccessReader(path)) {
+            reader.setDictionaries(dictionaries);
+            assertThat(reader.size()).isEqualTo(MESSAGE.length);
+            assertThat(reader.read(9, 5)).isEqualTo("alice".getBytes(StandardCharsets.US_ASCII));
+        }
+        Decompression decompression = new Decompression(2);
+        decompression.setDictionaries(dictionaries);
+        assertThat(Files.readAllBytes(Path.of(decompression.decompress(path.toString())))).isEqualTo(MESSAGE);
+    }
+
+    @Test
+    void compactMessageEndsWithItsBlock() throws IOException {
+        StaticDictionary dictionary = dictionary();
+        DictionaryRegistry dictionaries = new DictionaryRegistry();
+        dictionaries.register(dictionary);
+        byte[] compressed = compress(dictionary, Compression.CHUNK_SIZE, MESSAGE);
+
+        // A stream embedding the message goes on after it.
+        byte[] embedded = new byte[compressed.length + 4];
+        System.arraycopy(compressed, 0, embedded, 0, compressed.length);
+        ByteArrayInputStream in = new ByteArrayInputStream(embedded);
+        try (HuffmanInputStream inputStream = new HuffmanInputStream(in, null, dictionaries)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(MESSAGE);
+            assertThat(in.available()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void otherMessagesKeepTheIndex() throws IOException {
+        StaticDictionary dictionary = dictionary();
+        byte[] chunked = compress(dictionary, 32, MESSAGE);
+        byte[] coded = compress(null, Compression.CHUNK_SIZE, MESSAGE);
+        byte[] empty = compress(dictionary, Compression.CHUNK_SIZE, new byte[0]);
+
+        for (byte[] compressed : new byte[][] {chunked, coded, empty}) {
+            assertThat(HuffmanFormat.isCompact(compressed)).isFalse();
+            assertThat(compressed[compressed.length - HuffmanFormat.END_BLOCK_SIZE])
+                    .isEqualTo((byte) HuffmanFormat.END);
+        }
+    }
+
+    @Test
+    void corruptedCompactMessageIsRejected() throws IOException {
+        StaticDictionary dictionary = dictionary();
+        DictionaryRegistry dictionaries = new DictionaryRegistry();
+        dictionaries.register(dictionary);
+        byte[] compressed = compress(dictionary, Compression.CHUNK_SIZE, MESSAGE);
+
+        byte[] wrongBlock = compressed.clone();
+        wrongBlock[HuffmanFormat.HEADER_SIZE] = HuffmanFormat.CHUNK;
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length - 3);
+        for (byte[] corrupted : new byte[][] {wrongBlock, truncated}) {
+            assertThatThrownBy(() -> decompress(dictionaries, false, corrupted)).isInstanceOf(IOException.class);
+            assertThatThrownBy(() -> decompress(dictionaries, true, corrupted)).isInstanceOf(IOException.class);
+            Path path = directory.resolve("corrupted.hc");
+            Files.write(path, corrupted);
+            assertThatThrownBy(() -> new RandomAccessReader(path).close()).isInstanceOf(IOException.class);
+        }
+    }
+}
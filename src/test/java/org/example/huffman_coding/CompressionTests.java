@@ -0,0 +1,194 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressionTests {
+    /**
+     * This function takes a compression and a list of bytes, and returns their compressed data.
+     * */
+    static byte[] compress(Compression compression, byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        compression.compress(new ByteArrayInputStream(data), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    static byte[] decompress(byte[] compressed) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new Decompression().decompress(new ByteArrayInputStream(compressed), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * This function takes compressed data and returns the types of its chunk blocks, in order.
+     * */
+    static List<Integer> chunkTypes(byte[] compressed) {
+        List<Integer> types = new ArrayList<>();
+        int idx = HuffmanFormat.HEADER_SIZE;
+        while (idx < compressed.length) {
+            int blockType = compressed[idx];
+            if (HuffmanFormat.isChunk(blockType)) types.add(blockType);
+            idx += HuffmanFormat.BLOCK_HEADER_SIZE + HuffmanFormat.readInt(compressed, idx + 1);
+        }
+        return types;
+    }
+
+    /**
+     * This function takes a length and returns lines of a log, which are repetitive at the byte and the word level.
+     * */
+    static byte[] log(int length) {
+        Random random = new Random(11);
+        String[] levels = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+        String[] paths = {"/api/users", "/api/orders", "/health", "/static/app.js"};
+        StringBuilder log = new StringBuilder();
+        while (log.length() < length)
+            log.append("2024-05-0").append(1 + random.nextInt(9)).append(' ').append(levels[random.nextInt(5)])
+                    .append(" GET ").append(paths[random.nextInt(4)]).append(" status=")
+                    .append(random.nextInt(10) == 0 ? 500 : 200).append(" ms=").append(random.nextInt(300))
+                    .append('\n');
+        return Arrays.copyOf(log.toString().getBytes(StandardCharsets.US_ASCII), length);
+    }
+
+    /**
+     * This function takes a length and returns bytes drawn from a skewed distribution without byte-to-byte
+     * correlation.
+     * */
+    static byte[] skewed(int length) {
+        Random random = new Random(12);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) Math.min(Math.abs(random.nextGaussian() * 20), 255);
+        return data;
+    }
+
+    private static Compression compression(int chunkSize) {
+        Compression compression = new Compression();
+        compression.setChunkSize(chunkSize);
+        compression.setContextModeling(false);
+        return compression;
+    }
+
+    @Test
+    void roundTripsByteCodedChunks() throws IOException {
+        byte[] data = skewed(100_000);
+        byte[] compressed = compress(compression(10_000), data);
+
+        assertThat(chunkTypes(compressed)).hasSize(10).containsOnly(HuffmanFormat.CHUNK);
+        assertThat(compressed.length).isLessThan(data.length * 3 / 4);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsEmptyAndTinyInputs() throws IOException {
+        for (byte[] data : new byte[][] {new byte[0], {7}, {1, 2}, skewed(3)}) {
+            byte[] compressed = compress(compression(Compression.CHUNK_SIZE), data);
+            assertThat(decompress(compressed)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void roundTripsNgramChunks() throws IOException {
+        byte[] data = log(200_000);
+        for (int level = 3; level <= 4; level++) {
+            Compression compression = compression(20_000);
+            compression.setSymbolWidth(level - 1);
+            byte[] compressed = compress(compression, data);
+
+            assertThat(chunkTypes(compressed)).contains(HuffmanFormat.NGRAM_CHUNK);
+            assertThat(decompress(compressed)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void roundTripsInterleavedChunks() throws IOException {
+        byte[] data = skewed(100_000);
+        Compression compression = compression(10_000);
+        compression.setLevel(1);
+        byte[] compressed = compress(compression, data);
+
+        assertThat(chunkTypes(compressed)).hasSize(10).containsOnly(HuffmanFormat.INTERLEAVED_CHUNK);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsStoredAndRunChunks() throws IOException {
+        byte[] data = new byte[30_000];
+        new Random(13).nextBytes(data);
+        Arrays.fill(data, 10_000, 20_000, (byte) 'z');
+        byte[] compressed = compress(compression(10_000), data);
+
+        assertThat(chunkTypes(compressed)).containsExactly(HuffmanFormat.STORED_CHUNK, HuffmanFormat.RUN_CHUNK,
+                HuffmanFormat.STORED_CHUNK);
+        assertThat(compressed.length).isLessThan(20_000 + 100);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsContextChunks() throws IOException {
+        byte[] data = log(100_000);
+        Compression compression = compression(10_000);
+        compression.setLevel(2);
+        byte[] compressed = compress(compression, data);
+
+        assertThat(chunkTypes(compressed)).contains(HuffmanFormat.CONTEXT_CHUNK);
+        assertThat(compressed.length).isLessThan(compress(compression(10_000), data).length);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void contextChunksWinOverStoredChunksOnPredictableBytes() throws IOException {
+        // Every byte value is equally frequent (8 bits per byte of order-0 entropy), but a byte of 0x80 and above
+        // is always followed by one below, and the other way round, so the previous byte saves a bit per byte.
+        Random random = new Random(14);
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (random.nextInt(128) | (i % 2 == 0 ? 0x80 : 0));
+        Compression compression = compression(50_000);
+        byte[] stored = compress(compression, data);
+        compression.setLevel(2);
+        byte[] compressed = compress(compression, data);
+
+        assertThat(chunkTypes(stored)).containsOnly(HuffmanFormat.STORED_CHUNK);
+        assertThat(chunkTypes(compressed)).containsOnly(HuffmanFormat.CONTEXT_CHUNK);
+        assertThat(compressed.length).isLessThan(data.length * 15 / 16);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsStaticChunks() throws IOException {
+        byte[] data = log(30_000);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) samples.add(Arrays.copyOfRange(data, 1000 * i, 1000 * i + 1000));
+        StaticDictionary dictionary = StaticDictionary.train(41, samples);
+        DictionaryRegistry.shared().register(dictionary);
+        Compression compression = compression(200);
+        compression.setDictionary(dictionary);
+        byte[] compressed = compress(compression, data);
+
+        assertThat(chunkTypes(compressed)).contains(HuffmanFormat.STATIC_CHUNK);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsChunkReferences() throws IOException {
+        byte[] part = skewed(10_000);
+        byte[] data = new byte[40_000];
+        for (int i = 0; i < 4; i++) System.arraycopy(part, 0, data, 10_000 * i, 10_000);
+        data[25_000] ^= 1;
+        Compression compression = compression(10_000);
+        compression.setDeduplication(8);
+        byte[] compressed = compress(compression, data);
+
+        assertThat(chunkTypes(compressed)).containsExactly(HuffmanFormat.CHUNK, HuffmanFormat.REF_CHUNK,
+                HuffmanFormat.CHUNK, HuffmanFormat.REF_CHUNK);
+        assertThat(decompress(compressed)).isEqualTo(data);
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecompressionTests {
+    @TempDir
+    Path directory;
+
+    /**
+     * This function returns data whose chunks take most of the block types: log lines, skewed bytes, random bytes
+     * and a run of one byte.
+     * */
+    private static byte[] mixed() {
+        byte[] data = new byte[400_000];
+        System.arraycopy(CompressionTests.log(200_000), 0, data, 0, 200_000);
+        System.arraycopy(CompressionTests.skewed(100_000), 0, data, 200_000, 100_000);
+        byte[] noise = new byte[50_000];
+        new Random(21).nextBytes(noise);
+        System.arraycopy(noise, 0, data, 300_000, 50_000);
+        Arrays.fill(data, 350_000, 400_000, (byte) ' ');
+        return data;
+    }
+
+    /**
+     * This function takes a level and a list of bytes, compresses them into a file at that level in chunks of 10,000
+     * bytes, and returns the compressed file path.
+     * */
+    private Path compressFile(int level, byte[] data) throws IOException {
+        Path path = directory.resolve("data-" + level);
+        Files.write(path, data);
+        Compression compression = new Compression();
+        compression.setLevel(level);
+        compression.setChunkSize(10_000);
+        return Path.of(compression.compress(path.toString()));
+    }
+
+    /**
+     * This function takes compressed data and decodes it through every path: the stream decoder, HuffmanInputStream,
+     * the pipelined decoder, the parallel file decoder and RandomAccessReader. Each path must either succeed or
+     * throw an IOException, and the function returns how many paths threw one.
+     * */
+    private int decodeEverywhere(byte[] compressed) throws IOException {
+        Path path = Files.write(directory.resolve("corrupted.hc"), compressed);
+        int rejected = 0;
+        for (int decoder = 0; decoder < 5; decoder++) {
+            try {
+                switch (decoder) {
+                    case 0 -> CompressionTests.decompress(compressed);
+                    case 1 -> new HuffmanInputStream(new ByteArrayInputStream(compressed)).readAllBytes();
+                    case 2 -> {
+                        Decompression decompression = new Decompression(2);
+                        decompression.setPipelined(true);
+                        decompression.decompress(new ByteArrayInputStream(compressed), new ByteArrayOutputStream());
+                    }
+                    case 3 -> new Decompression(2).decompress(path.toString());
+                    default -> {
+                        try (RandomAccessReader reader = new RandomAccessReader(path)) {
+                            reader.read(0, (int) Math.min(reader.size(), Integer.MAX_VALUE));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    @Test
+    void parallelDecodeMatchesSequentialDecode() throws IOException {
+        byte[] data = mixed();
+        for (int level = Compression.MIN_LEVEL; level <= Compression.MAX_LEVEL; level++) {
+            Path compressedPath = compressFile(level, data);
+            Path sequential = Path.of(new Decompression().decompress(compressedPath.toString()));
+            assertThat(Files.readAllBytes(sequential)).isEqualTo(data);
+            Files.delete(sequential);
+            Path parallel = Path.of(new Decompression(4).decompress(compressedPath.toString()));
+            assertThat(Files.readAllBytes(parallel)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void streamDecodeMatchesSequentialDecode() throws IOException {
+        byte[] data = mixed();
+        for (int level = Compression.MIN_LEVEL; level <= Compression.MAX_LEVEL; level++) {
+            byte[] compressed = Files.readAllBytes(compressFile(level, data));
+            try (InputStream inputStream = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+                assertThat(inputStream.readAllBytes()).isEqualTo(data);
+            }
+
+            // Reads of a few bytes, and skips across chunk boundaries.
+            try (InputStream inputStream = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+                byte[] buffer = new byte[7];
+                assertThat(inputStream.readNBytes(buffer, 0, 7)).isEqualTo(7);
+                assertThat(buffer).isEqualTo(Arrays.copyOf(data, 7));
+                assertThat(inputStream.skip(9_993 + 10_000)).isEqualTo(19_993);
+                assertThat(inputStream.read()).isEqualTo(data[20_000] & 0xFF);
+                assertThat(inputStream.skip(data.length)).isEqualTo(data.length - 20_001);
+                assertThat(inputStream.read()).isEqualTo(-1);
+            }
+        }
+    }
+
+    @Test
+    void pipelinedDecodeMatchesSequentialDecode() throws IOException {
+        byte[] data = mixed();
+        for (int level = Compression.MIN_LEVEL; level <= Compression.MAX_LEVEL; level++) {
+            byte[] compressed = Files.readAllBytes(compressFile(level, data));
+            for (int threads : new int[] {1, 4}) {
+                Decompression decompression = new Decompression(threads);
+                decompression.setPipelined(true);
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                decompression.decompress(new ByteArrayInputStream(compressed), outputStream);
+                assertThat(outputStream.toByteArray()).isEqualTo(data);
+            }
+        }
+
+        // A pipelined compression with references decodes the same way.
+        Compression compression = new Compression(4);
+        compression.setChunkSize(10_000);
+        compression.setDeduplication(64);
+        compression.setPipelined(true);
+        byte[] repeated = new byte[2 * data.length];
+        System.arraycopy(data, 0, repeated, 0, data.length);
+        System.arraycopy(data, 0, repeated, data.length, data.length);
+        byte[] compressed = CompressionTests.compress(compression, repeated);
+        assertThat(CompressionTests.chunkTypes(compressed)).contains(HuffmanFormat.REF_CHUNK);
+        Decompression decompression = new Decompression(4);
+        decompression.setPipelined(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        decompression.decompress(new ByteArrayInputStream(compressed), outputStream);
+        assertThat(outputStream.toByteArray()).isEqualTo(repeated);
+        assertThat(CompressionTests.decompress(compressed)).isEqualTo(repeated);
+    }
+
+    @Test
+    void corruptedInputIsRejected() throws IOException {
+        byte[] data = mixed();
+        Compression compression = new Compression();
+        compression.setChunkSize(10_000);
+        compression.setDeduplication(8);
+        byte[] compressed = CompressionTests.compress(compression, data);
+        assertThat(decodeEverywhere(compressed)).isZero();
+
+        // Every path rejects a bad header, a truncated stream and a block length past the end of the data.
+        byte[] header = compressed.clone();
+        header[1] = 'X';
+        byte[] version = compressed.clone();
+        version[2] = 9;
+        byte[] length = compressed.clone();
+        HuffmanFormat.writeInt(length, HuffmanFormat.HEADER_SIZE + HuffmanFormat.DEDUP_BLOCK_SIZE + 1, 1 << 30);
+        for (byte[] corrupted : new byte[][] {header, version, length, Arrays.copyOf(compressed, 2),
+                Arrays.copyOf(compressed, compressed.length / 2), Arrays.copyOf(compressed, compressed.length - 1)})
+            assertThat(decodeEverywhere(corrupted)).isEqualTo(5);
+
+        // Flipped bytes may go unnoticed in the codewords, but they never fail with anything but an IOException.
+        Random random = new Random(22);
+        for (int i = 0; i < 200; i++) {
+            byte[] corrupted = compressed.clone();
+            for (int j = 0; j < 3; j++) corrupted[random.nextInt(corrupted.length)] ^= (byte) (1 << random.nextInt(8));
+            decodeEverywhere(corrupted);
+        }
+    }
+}
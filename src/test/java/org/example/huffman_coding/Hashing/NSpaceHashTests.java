@@ -0,0 +1,58 @@
+package org.example.huffman_coding.Hashing;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class NSpaceHashTests {
+    @Test
+    void bulkBuildFindsEveryKey() {
+        long[] keys = new SplittableRandom(1).longs(10_000).toArray();
+        NSpaceHash hash = new NSpaceHash(keys, 5_000);
+
+        assertThat(hash.size()).isEqualTo(5_000);
+        assertThat(hash.capacity()).isLessThanOrEqualTo(8 * 5_000);
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash.indexOf(keys[i]);
+            if (i < 5_000) assertThat(hash.key(slot)).isEqualTo(keys[i]);
+            else assertThat(slot).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void insertsTakeLinearTime() {
+        long[] keys = new SplittableRandom(2).longs(200_000).toArray();
+        NSpaceHash hash = new NSpaceHash(0);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (long key : keys) assertThat(hash.insert(key)).isTrue();
+        });
+
+        assertThat(hash.size()).isEqualTo(keys.length);
+        assertThat(hash.capacity()).isLessThanOrEqualTo(32 * keys.length);
+        for (long key : keys) assertThat(hash.search(key).getKey()).isTrue();
+    }
+
+    @Test
+    void updatesMatchASet() {
+        SplittableRandom random = new SplittableRandom(3);
+        NSpaceHash hash = new NSpaceHash(random.longs(1_000, 0, 4_000).toArray());
+        Set<Long> expected = new HashSet<>();
+        for (int slot = 0; slot < hash.capacity(); slot++)
+            if (hash.isFull(slot)) expected.add(hash.key(slot));
+
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextLong(4_000);
+            if (random.nextBoolean()) assertThat(hash.insert(key)).isEqualTo(expected.add(key));
+            else assertThat(hash.delete(key)).isEqualTo(expected.remove(key));
+        }
+        assertThat(hash.size()).isEqualTo(expected.size());
+        for (long key = 0; key < 4_000; key++)
+            assertThat(hash.indexOf(key) >= 0).isEqualTo(expected.contains(key));
+    }
+}
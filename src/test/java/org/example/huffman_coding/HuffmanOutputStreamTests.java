@@ -0,0 +1,35 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HuffmanOutputStreamTests {
+    @Test
+    void deduplicatesLikeCompression() throws IOException {
+        byte[] part = CompressionTests.log(30_000);
+        byte[] data = new byte[4 * part.length];
+        for (int i = 0; i < 4; i++) System.arraycopy(part, 0, data, i * part.length, part.length);
+        Compression compression = new Compression();
+        compression.setChunkSize(10_000);
+        compression.setDeduplication(8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (HuffmanOutputStream outputStream = new HuffmanOutputStream(compressed, compression)) {
+            for (int offset = 0; offset < data.length; offset += 777)
+                outputStream.write(data, offset, Math.min(777, data.length - offset));
+        }
+
+        assertThat(compressed.toByteArray()).isEqualTo(CompressionTests.compress(compression, data));
+        assertThat(CompressionTests.chunkTypes(compressed.toByteArray()))
+                .filteredOn(blockType -> blockType == HuffmanFormat.REF_CHUNK).hasSize(9);
+        try (HuffmanInputStream inputStream = new HuffmanInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(data);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.huffman_coding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RandomAccessReaderTests {
+    private static final int CHUNK_SIZE = 10_000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * This function takes a list of bytes and a deduplication cache size (0 for none), compresses the bytes into a
+     * file in chunks of CHUNK_SIZE bytes, and returns the compressed file path.
+     * */
+    private Path compressFile(byte[] data, int deduplication) throws IOException {
+        Path path = Files.write(directory.resolve("data-" + deduplication + ".log"), data);
+        Compression compression = new Compression(2);
+        compression.setChunkSize(CHUNK_SIZE);
+        compression.setDeduplication(deduplication);
+        return Path.of(compression.compress(path.toString()));
+    }
+
+    @Test
+    void readsRangesAtChunkBoundaries() throws IOException {
+        byte[] data = CompressionTests.log(10 * CHUNK_SIZE + CHUNK_SIZE / 2);
+        Path compressedPath = compressFile(data, 0);
+        long[][] ranges = {{0, 1}, {0, CHUNK_SIZE}, {CHUNK_SIZE - 1, 2}, {CHUNK_SIZE, CHUNK_SIZE},
+                {2 * CHUNK_SIZE - 3, 3 * CHUNK_SIZE + 6}, {data.length - 1, 1}, {data.length - 10, 100},
+                {5 * CHUNK_SIZE, 0}, {0, data.length}};
+
+        Decompression decompression = new Decompression();
+        for (long[] range : ranges) {
+            int offset = (int) range[0];
+            byte[] expected = Arrays.copyOfRange(data, offset, (int) Math.min(offset + range[1], data.length));
+            assertThat(decompression.read(compressedPath, offset, (int) range[1])).isEqualTo(expected);
+        }
+        try (RandomAccessReader reader = new RandomAccessReader(compressedPath, 2)) {
+            assertThat(reader.size()).isEqualTo(data.length);
+            for (long[] range : ranges) {
+                int offset = (int) range[0];
+                byte[] expected = Arrays.copyOfRange(data, offset, (int) Math.min(offset + range[1], data.length));
+                assertThat(reader.read(offset, (int) range[1])).isEqualTo(expected);
+            }
+            assertThat(reader.read(data.length, 10)).isEmpty();
+            assertThat(reader.read(data.length, new byte[10], 0, 10)).isEqualTo(-1);
+            assertThatThrownBy(() -> reader.read(-1, 10)).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+
+    @Test
+    void readsRepeatedChunks() throws IOException {
+        byte[] part = CompressionTests.log(3 * CHUNK_SIZE);
+        byte[] data = new byte[9 * CHUNK_SIZE];
+        for (int i = 0; i < 3; i++) System.arraycopy(part, 0, data, i * part.length, part.length);
+        Path compressedPath = compressFile(data, 8);
+
+        try (RandomAccessReader reader = new RandomAccessReader(compressedPath, 1)) {
+            // Chunks 6 to 8 refer to chunks 0 to 2, which the cache of one chunk no longer holds.
+            assertThat(reader.read(7 * CHUNK_SIZE - 5, 10))
+                    .isEqualTo(Arrays.copyOfRange(data, 7 * CHUNK_SIZE - 5, 7 * CHUNK_SIZE + 5));
+            assertThat(reader.read(0, data.length)).isEqualTo(data);
+        }
+    }
+}